@@ -0,0 +1,153 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup throughput (hit and miss) per entry type and catalog size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+	public enum EntryKind {
+
+		EXACT {
+
+			@Override
+			CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i) {
+				return builder.addURI(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null)
+					.addSystem(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null);
+			}
+		},
+		REWRITE {
+
+			@Override
+			CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i) {
+				return builder.addRewriteURI(name(i), "file:/target/" + i + "/")
+					.addRewriteSystem(name(i), "file:/target/" + i + "/");
+			}
+		},
+		SUFFIX {
+
+			@Override
+			CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i) {
+				return builder.addURISuffix("/" + i + "/schema.xsd", "file:/target/" + i + ".xsd", null)
+					.addSystemSuffix("/" + i + "/schema.xsd", "file:/target/" + i + ".xsd", null);
+			}
+
+			@Override
+			String hit(int size) {
+				return "http://example.org/" + (size - 1) + "/schema.xsd";
+			}
+		},
+		DELEGATE {
+
+			@Override
+			CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i) {
+				return builder.addDelegateURI(name(i), PUBLIC, null).addURI(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null).end()
+					.addDelegateSystem(name(i), PUBLIC, null).addSystem(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null).end();
+			}
+		},
+		NEXT_CATALOG {
+
+			@Override
+			CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i) {
+				return builder.addNextCatalog(PUBLIC, null)
+					.addURI(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null)
+					.addSystem(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null)
+					.end();
+			}
+		};
+
+		abstract CatalogBuilder<Catalog> add(CatalogBuilder<Catalog> builder, int i);
+
+		String hit(int size) {
+			return name(size - 1) + "schema.xsd";
+		}
+
+		String miss() {
+			return "http://example.com/unknown/schema.xsd";
+		}
+
+		static String name(int i) {
+			return "http://example.org/" + i + "/";
+		}
+	}
+
+	private Catalog catalog;
+	private String hit;
+
+	@Param
+	private EntryKind kind;
+
+	private String miss;
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	private int size;
+
+	@Benchmark
+	public String externalIdentifierHit() {
+		return catalog.lookupExternalIdentifier(null, hit);
+	}
+
+	@Benchmark
+	public String externalIdentifierMiss() {
+		return catalog.lookupExternalIdentifier(null, miss);
+	}
+
+	@Setup
+	public void setUp() {
+		CatalogBuilder<Catalog> builder = newCatalog(PUBLIC, null);
+		for (int i = 0; i < size; i++) {
+			builder = kind.add(builder, i);
+		}
+		catalog = builder.end();
+		hit = kind.hit(size);
+		miss = kind.miss();
+		if (catalog.lookupURI(hit) == null || catalog.lookupURI(miss) != null) {
+			throw new IllegalStateException("Benchmark catalog does not behave as expected");
+		}
+	}
+
+	@Benchmark
+	public String uriHit() {
+		return catalog.lookupURI(hit);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String uriHitConcurrent() {
+		return catalog.lookupURI(hit);
+	}
+
+	@Benchmark
+	public String uriMiss() {
+		return catalog.lookupURI(miss);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public String uriMissConcurrent() {
+		return catalog.lookupURI(miss);
+	}
+}
@@ -0,0 +1,90 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a single-entry update of a {@link MutableCatalog} per entry kind and catalog size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutableCatalogBenchmark {
+
+	public enum EntryKind {
+
+		EXACT {
+
+			@Override
+			MutableCatalog.Batch add(MutableCatalog.Batch batch, int i) {
+				return batch.addURI(name(i) + "schema.xsd", "file:/target/" + i + ".xsd", null);
+			}
+
+			@Override
+			MutableCatalog.Batch remove(MutableCatalog.Batch batch, int i) {
+				return batch.remove(EntryType.URI, name(i) + "schema.xsd");
+			}
+		},
+		REWRITE {
+
+			@Override
+			MutableCatalog.Batch add(MutableCatalog.Batch batch, int i) {
+				return batch.addRewriteURI(name(i), "file:/target/" + i + "/");
+			}
+
+			@Override
+			MutableCatalog.Batch remove(MutableCatalog.Batch batch, int i) {
+				return batch.remove(EntryType.REWRITE_URI, name(i));
+			}
+		};
+
+		abstract MutableCatalog.Batch add(MutableCatalog.Batch batch, int i);
+
+		abstract MutableCatalog.Batch remove(MutableCatalog.Batch batch, int i);
+
+		static String name(int i) {
+			return "http://example.org/" + i + "/";
+		}
+	}
+
+	private MutableCatalog catalog;
+
+	@Param
+	private EntryKind kind;
+
+	@Param({ "1000", "100000" })
+	private int size;
+
+	@Setup
+	public void setUp() {
+		catalog = new MutableCatalog(PUBLIC, null);
+		catalog.update(batch -> {
+			for (int i = 0; i < size; i++) {
+				kind.add(batch, i);
+			}
+		});
+	}
+
+	@Benchmark
+	public MutableCatalog update() {
+		catalog.update(batch -> kind.add(batch, size));
+		catalog.update(batch -> kind.remove(batch, size));
+		return catalog;
+	}
+}
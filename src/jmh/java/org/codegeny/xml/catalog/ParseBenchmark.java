@@ -0,0 +1,110 @@
+package org.codegeny.xml.catalog;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse (and build) time for generated catalog files containing every entry type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	private Path directory;
+	private final BoundedCatalogCache cache = BoundedCatalogCache.builder().build();
+	private CatalogParser parser;
+
+	@Param({ "10", "1000", "100000" })
+	private int size;
+
+	private String systemId;
+
+	@Benchmark
+	public Catalog parse() {
+		return parser.parse(systemId);
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("catalog");
+		Path next = directory.resolve("next.xml");
+		Path root = directory.resolve("catalog.xml");
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(next, StandardCharsets.UTF_8))) {
+			writer.println("<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\" prefer=\"public\"/>");
+		}
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(root, StandardCharsets.UTF_8))) {
+			writer.println("<catalog xmlns=\"urn:oasis:names:tc:entity:xmlns:xml:catalog\" prefer=\"public\" xml:base=\"file:/target/\">");
+			for (int i = 0; i < size; i++) {
+				switch (i % 8) {
+				case 0:
+					writer.printf("<system systemId=\"http://example.org/%d.xsd\" uri=\"%d.xsd\"/>%n", i, i);
+					break;
+				case 1:
+					writer.printf("<public publicId=\"-//EXAMPLE//%d//EN\" uri=\"%d.dtd\"/>%n", i, i);
+					break;
+				case 2:
+					writer.printf("<uri name=\"http://example.org/%d.xsd\" uri=\"%d.xsd\"/>%n", i, i);
+					break;
+				case 3:
+					writer.printf("<rewriteURI uriStartString=\"http://example.org/%d/\" rewritePrefix=\"file:/target/%d/\"/>%n", i, i);
+					break;
+				case 4:
+					writer.printf("<rewriteSystem systemIdStartString=\"http://example.org/%d/\" rewritePrefix=\"file:/target/%d/\"/>%n", i, i);
+					break;
+				case 5:
+					writer.printf("<uriSuffix uriSuffix=\"/%d/schema.xsd\" uri=\"%d.xsd\"/>%n", i, i);
+					break;
+				case 6:
+					writer.printf("<group prefer=\"public\"><systemSuffix systemIdSuffix=\"/%d/schema.xsd\" uri=\"%d.xsd\"/></group>%n", i, i);
+					break;
+				default:
+					writer.printf("<delegateURI uriStartString=\"http://example.org/%d/\" catalog=\"next.xml\"/>%n", i);
+					break;
+				}
+			}
+			writer.println("</catalog>");
+		}
+		systemId = root.toUri().toString();
+		parser = new CatalogParser((href, base) -> new StreamSource((base == null ? URI.create(href) : URI.create(base).resolve(href)).toString()), cache);
+	}
+
+	/**
+	 * Empties the cache before each parse as a cached root catalog would never be parsed again, while catalogs shared within the parsed graph still are.
+	 */
+	@Setup(Level.Invocation)
+	public void invalidate() {
+		cache.invalidateAll();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for (Path path : new Path[] { directory.resolve("catalog.xml"), directory.resolve("next.xml"), directory }) {
+			Files.delete(path);
+		}
+	}
+}
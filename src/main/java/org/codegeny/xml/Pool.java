@@ -0,0 +1,54 @@
+package org.codegeny.xml;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free pool of non thread-safe objects. Objects are not bound to threads (which would not work well with virtual threads) but borrowed and given
+ * back; at most <code>maximumIdle</code> objects are kept between uses, extra ones are dropped.
+ */
+class Pool<T> {
+
+	private final Supplier<? extends T> factory;
+	private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final int maximumIdle;
+	private final Consumer<? super T> reset;
+
+	/**
+	 * @param factory The factory for new objects.
+	 * @param reset Restores an object to its initial state before it is borrowed again (if it throws, the object is dropped).
+	 * @param maximumIdle The maximum number of idle objects kept.
+	 */
+	public Pool(Supplier<? extends T> factory, Consumer<? super T> reset, int maximumIdle) {
+		this.factory = factory;
+		this.reset = reset;
+		this.maximumIdle = maximumIdle;
+	}
+
+	public Pooled<T> borrow() {
+		T object = idle.poll();
+		if (object != null) {
+			idleCount.decrementAndGet();
+		} else {
+			object = factory.get();
+		}
+		return new Pooled<>(this, object);
+	}
+
+	void release(T object) {
+		try {
+			reset.accept(object);
+		} catch (RuntimeException runtimeException) {
+			return;
+		}
+		if (idleCount.incrementAndGet() <= maximumIdle) {
+			idle.offer(object);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package org.codegeny.xml;
+
+/**
+ * Object borrowed from a pool, which must be closed (usually with <code>try-with-resources</code>) to give it back.
+ *
+ * <pre>
+ * try (Pooled&lt;DocumentBuilder&gt; documentBuilder = processors.documentBuilder()) {
+ *     Document document = documentBuilder.get().parse(input);
+ * }
+ * </pre>
+ */
+public final class Pooled<T> implements AutoCloseable {
+
+	private T object;
+	private final Pool<T> pool;
+
+	Pooled(Pool<T> pool, T object) {
+		this.pool = pool;
+		this.object = object;
+	}
+
+	/**
+	 * Gives the object back to the pool. The object must not be used anymore afterwards.
+	 */
+	@Override
+	public void close() {
+		if (object != null) {
+			T released = object;
+			object = null;
+			pool.release(released);
+		}
+	}
+
+	/**
+	 * @return The borrowed object.
+	 * @throws IllegalStateException If this object was already given back.
+	 */
+	public T get() {
+		if (object == null) {
+			throw new IllegalStateException("Pooled object was already given back");
+		}
+		return object;
+	}
+}
@@ -0,0 +1,17 @@
+package org.codegeny.xml;
+
+/**
+ * General XML processing exception.
+ */
+public class XMLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public XMLException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public XMLException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,423 @@
+package org.codegeny.xml;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+
+import org.codegeny.xml.catalog.Catalog;
+import org.codegeny.xml.catalog.ResourceCache;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Thread-safe entry point for XML processing with a {@link Catalog}. It hands out pooled parsers, validators and transformers which are already wired
+ * to the catalog (through an {@link EntityResolver}, an {@link LSResourceResolver} and an {@link URIResolver}) and compiles {@link Schema}s and
+ * {@link Templates} only once per catalog-resolved systemId.
+ *
+ * <pre>
+ * XMLProcessors processors = XMLProcessors.builder(catalog).resourceCache(ResourceCache.builder().build()).build();
+ * try (Pooled&lt;Validator&gt; validator = processors.validator("http://www.example.org/schema.xsd")) {
+ *     validator.get().validate(source);
+ * }
+ * </pre>
+ *
+ * Pooled objects are reset when they are given back. Note that {@link SAXParser#parse(InputSource, org.xml.sax.helpers.DefaultHandler)} replaces the
+ * entity resolver by the handler; use {@link SAXParser#getXMLReader()} to keep resolving entities through the catalog.
+ */
+public class XMLProcessors {
+
+	public static class Builder {
+
+		private final Catalog catalog;
+		private Supplier<DocumentBuilderFactory> documentBuilderFactory = () -> {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			return factory;
+		};
+		private int maximumIdle = Runtime.getRuntime().availableProcessors() * 2;
+		private ResourceCache resourceCache;
+		private LSResourceResolver resourceResolver;
+		private Supplier<SAXParserFactory> saxParserFactory = () -> {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			return factory;
+		};
+		private Supplier<SchemaFactory> schemaFactory = () -> SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+		private Supplier<TransformerFactory> transformerFactory = TransformerFactory::newInstance;
+		private URIResolver uriResolver = XMLProcessors::resolveURI;
+
+		private Builder(Catalog catalog) {
+			this.catalog = requireNonNull(catalog, "catalog cannot be null");
+		}
+
+		public XMLProcessors build() {
+			return new XMLProcessors(this);
+		}
+
+		public Builder documentBuilderFactory(Supplier<DocumentBuilderFactory> documentBuilderFactory) {
+			this.documentBuilderFactory = requireNonNull(documentBuilderFactory, "documentBuilderFactory cannot be null");
+			return this;
+		}
+
+		/**
+		 * @param maximumIdle The maximum number of idle objects kept in each pool.
+		 */
+		public Builder maximumIdle(int maximumIdle) {
+			this.maximumIdle = maximumIdle;
+			return this;
+		}
+
+		/**
+		 * @param resourceCache The cache from which the content of mapped resources (and of schemas and stylesheets) is read.
+		 */
+		public Builder resourceCache(ResourceCache resourceCache) {
+			this.resourceCache = resourceCache;
+			return this;
+		}
+
+		/**
+		 * @param resourceResolver The resolver given the systemIds mapped by the catalog (and the ones which are not mapped), by default they are
+		 *            read as URLs.
+		 */
+		public Builder resourceResolver(LSResourceResolver resourceResolver) {
+			this.resourceResolver = requireNonNull(resourceResolver, "resourceResolver cannot be null");
+			return this;
+		}
+
+		public Builder saxParserFactory(Supplier<SAXParserFactory> saxParserFactory) {
+			this.saxParserFactory = requireNonNull(saxParserFactory, "saxParserFactory cannot be null");
+			return this;
+		}
+
+		public Builder schemaFactory(Supplier<SchemaFactory> schemaFactory) {
+			this.schemaFactory = requireNonNull(schemaFactory, "schemaFactory cannot be null");
+			return this;
+		}
+
+		public Builder transformerFactory(Supplier<TransformerFactory> transformerFactory) {
+			this.transformerFactory = requireNonNull(transformerFactory, "transformerFactory cannot be null");
+			return this;
+		}
+
+		/**
+		 * @param uriResolver The resolver given the URIs mapped by the catalog (and the ones which are not mapped), by default they are read as URLs.
+		 */
+		public Builder uriResolver(URIResolver uriResolver) {
+			this.uriResolver = requireNonNull(uriResolver, "uriResolver cannot be null");
+			return this;
+		}
+	}
+
+	/**
+	 * A compiled object (schema or templates) along with the pool of objects it creates.
+	 */
+	private static final class Compiled<C, T> {
+
+		private final C compiled;
+		private final Pool<T> pool;
+
+		public Compiled(C compiled, Pool<T> pool) {
+			this.compiled = compiled;
+			this.pool = pool;
+		}
+	}
+
+	public static Builder builder(Catalog catalog) {
+		return new Builder(catalog);
+	}
+
+	private final Catalog catalog;
+	private final Pool<DocumentBuilder> documentBuilders;
+	private final EntityResolver entityResolver;
+	private final int maximumIdle;
+	private final LSResourceResolver resourceResolver;
+	private final Pool<SAXParser> saxParsers;
+	// factories are not thread-safe, compiling is expensive so they are pooled instead of being shared under a lock
+	private final Pool<SchemaFactory> schemaFactories;
+	private final ConcurrentMap<String, CompletableFuture<Compiled<Schema, Validator>>> schemas = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, CompletableFuture<Compiled<Templates, Transformer>>> templates = new ConcurrentHashMap<>();
+	private final Pool<TransformerFactory> transformerFactories;
+	private final URIResolver uriResolver;
+
+	private XMLProcessors(Builder builder) {
+		this.catalog = builder.catalog;
+		this.maximumIdle = builder.maximumIdle;
+		ResourceCache resourceCache = builder.resourceCache;
+		this.entityResolver = this::resolveEntity;
+		this.uriResolver = resourceCache != null ? resourceCache.uriResolver(catalog, builder.uriResolver) : catalog.decorate(builder.uriResolver);
+		DocumentBuilderFactory documentBuilderFactory = builder.documentBuilderFactory.get();
+		this.documentBuilders = new Pool<>(() -> newDocumentBuilder(documentBuilderFactory), documentBuilder -> {
+			documentBuilder.reset();
+			documentBuilder.setEntityResolver(entityResolver);
+		}, maximumIdle);
+		LSResourceResolver lsResourceResolver = builder.resourceResolver;
+		if (lsResourceResolver == null) {
+			DOMImplementationLS domImplementation;
+			try (Pooled<DocumentBuilder> documentBuilder = documentBuilders.borrow()) {
+				domImplementation = (DOMImplementationLS) documentBuilder.get().getDOMImplementation();
+			}
+			lsResourceResolver = (type, namespaceURI, publicId, systemId, baseURI) -> {
+				if (systemId == null) {
+					return null;
+				}
+				LSInput input = domImplementation.createLSInput();
+				input.setPublicId(publicId);
+				input.setSystemId(systemId);
+				input.setBaseURI(baseURI);
+				return input;
+			};
+		}
+		this.resourceResolver = resourceCache != null ? resourceCache.resourceResolver(catalog, lsResourceResolver) : catalog.decorate(lsResourceResolver);
+		SAXParserFactory saxParserFactory = builder.saxParserFactory.get();
+		this.saxParsers = new Pool<>(() -> newSAXParser(saxParserFactory), saxParser -> {
+			saxParser.reset();
+			setEntityResolver(saxParser);
+		}, maximumIdle);
+		this.schemaFactories = new Pool<>(() -> {
+			SchemaFactory schemaFactory = builder.schemaFactory.get();
+			schemaFactory.setResourceResolver(resourceResolver);
+			return schemaFactory;
+		}, schemaFactory -> {}, maximumIdle);
+		this.transformerFactories = new Pool<>(() -> {
+			TransformerFactory transformerFactory = builder.transformerFactory.get();
+			transformerFactory.setURIResolver(uriResolver);
+			return transformerFactory;
+		}, transformerFactory -> {}, maximumIdle);
+	}
+
+	private static Source resolveURI(String href, String base) {
+		return new StreamSource(base != null ? URI.create(base).resolve(href).toString() : href);
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException completionException) {
+			if (completionException.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) completionException.getCause();
+			}
+			if (completionException.getCause() instanceof Error) {
+				throw (Error) completionException.getCause();
+			}
+			throw completionException;
+		}
+	}
+
+	private <C, T> Compiled<C, T> compiled(ConcurrentMap<String, CompletableFuture<Compiled<C, T>>> cache, String systemId, Function<Source, Compiled<C, T>> compiler) {
+		String mapped = catalog.lookupURI(systemId);
+		String resolved = mapped != null ? mapped : systemId;
+		CompletableFuture<Compiled<C, T>> future = cache.get(resolved);
+		if (future == null) {
+			// compile outside of the map so that compiling may compile other schemas or stylesheets, other threads wait for the first one
+			CompletableFuture<Compiled<C, T>> compiling = new CompletableFuture<>();
+			future = cache.putIfAbsent(resolved, compiling);
+			if (future == null) {
+				try {
+					Compiled<C, T> compiled = compiler.apply(resolve(systemId));
+					compiling.complete(compiled);
+					return compiled;
+				} catch (RuntimeException | Error throwable) {
+					cache.remove(resolved, compiling);
+					compiling.completeExceptionally(throwable);
+					throw throwable;
+				}
+			}
+		}
+		return join(future);
+	}
+
+	/**
+	 * @return A pooled document builder which resolves entities through the catalog.
+	 */
+	public Pooled<DocumentBuilder> documentBuilder() {
+		return documentBuilders.borrow();
+	}
+
+	public EntityResolver entityResolver() {
+		return entityResolver;
+	}
+
+	/**
+	 * Discards all compiled schemas and templates (along with their pooled validators and transformers).
+	 */
+	public void invalidateAll() {
+		schemas.clear();
+		templates.clear();
+	}
+
+	private DocumentBuilder newDocumentBuilder(DocumentBuilderFactory factory) {
+		DocumentBuilder documentBuilder;
+		synchronized (factory) {
+			try {
+				documentBuilder = factory.newDocumentBuilder();
+			} catch (ParserConfigurationException parserConfigurationException) {
+				throw new XMLException("Could not create document builder", parserConfigurationException);
+			}
+		}
+		documentBuilder.setEntityResolver(entityResolver);
+		return documentBuilder;
+	}
+
+	private SAXParser newSAXParser(SAXParserFactory factory) {
+		SAXParser saxParser;
+		synchronized (factory) {
+			try {
+				saxParser = factory.newSAXParser();
+			} catch (ParserConfigurationException | SAXException exception) {
+				throw new XMLException("Could not create SAX parser", exception);
+			}
+		}
+		setEntityResolver(saxParser);
+		return saxParser;
+	}
+
+	private Source resolve(String systemId) {
+		try {
+			return uriResolver.resolve(systemId, null);
+		} catch (TransformerException transformerException) {
+			throw new XMLException(String.format("Could not resolve '%s'", systemId), transformerException);
+		}
+	}
+
+	private InputSource resolveEntity(String publicId, String systemId) {
+		LSInput input = resourceResolver.resolveResource(null, null, publicId, systemId, null);
+		if (input == null) {
+			return null;
+		}
+		InputSource inputSource = new InputSource(input.getSystemId());
+		inputSource.setPublicId(publicId);
+		inputSource.setByteStream(input.getByteStream());
+		inputSource.setCharacterStream(input.getStringData() != null ? new StringReader(input.getStringData()) : input.getCharacterStream());
+		inputSource.setEncoding(input.getEncoding());
+		return inputSource;
+	}
+
+	public LSResourceResolver resourceResolver() {
+		return resourceResolver;
+	}
+
+	/**
+	 * @return A pooled SAX parser whose {@link SAXParser#getXMLReader() reader} resolves entities through the catalog.
+	 */
+	public Pooled<SAXParser> saxParser() {
+		return saxParsers.borrow();
+	}
+
+	/**
+	 * @param systemId The systemId of the schema, mapped through the catalog as a URI.
+	 * @return The compiled schema, compiled only once per mapped systemId.
+	 * @throws XMLException If the schema could not be compiled.
+	 */
+	public Schema schema(String systemId) {
+		return schemaCompiled(systemId).compiled;
+	}
+
+	private Compiled<Schema, Validator> schemaCompiled(String systemId) {
+		return compiled(schemas, systemId, source -> {
+			Schema schema;
+			try (Pooled<SchemaFactory> schemaFactory = schemaFactories.borrow()) {
+				schema = schemaFactory.get().newSchema(source);
+			} catch (SAXException saxException) {
+				throw new XMLException(String.format("Could not compile schema '%s'", source.getSystemId()), saxException);
+			}
+			return new Compiled<>(schema, new Pool<>(() -> {
+				Validator validator = schema.newValidator();
+				validator.setResourceResolver(resourceResolver);
+				return validator;
+			}, validator -> {
+				validator.reset();
+				validator.setResourceResolver(resourceResolver);
+			}, maximumIdle));
+		});
+	}
+
+	private void setEntityResolver(SAXParser saxParser) {
+		try {
+			saxParser.getXMLReader().setEntityResolver(entityResolver);
+		} catch (SAXException saxException) {
+			throw new XMLException("Could not configure SAX parser", saxException);
+		}
+	}
+
+	/**
+	 * @param systemId The systemId of the stylesheet, mapped through the catalog as a URI.
+	 * @return The compiled stylesheet, compiled only once per mapped systemId.
+	 * @throws XMLException If the stylesheet could not be compiled.
+	 */
+	public Templates templates(String systemId) {
+		return templatesCompiled(systemId).compiled;
+	}
+
+	private Compiled<Templates, Transformer> templatesCompiled(String systemId) {
+		return compiled(templates, systemId, source -> {
+			Templates templates;
+			try (Pooled<TransformerFactory> transformerFactory = transformerFactories.borrow()) {
+				templates = transformerFactory.get().newTemplates(source);
+			} catch (TransformerConfigurationException transformerConfigurationException) {
+				throw new XMLException(String.format("Could not compile stylesheet '%s'", source.getSystemId()), transformerConfigurationException);
+			}
+			return new Compiled<>(templates, new Pool<>(() -> {
+				try {
+					Transformer transformer = templates.newTransformer();
+					transformer.setURIResolver(uriResolver);
+					return transformer;
+				} catch (TransformerConfigurationException transformerConfigurationException) {
+					throw new XMLException(String.format("Could not create transformer for '%s'", source.getSystemId()), transformerConfigurationException);
+				}
+			}, transformer -> {
+				transformer.reset();
+				transformer.setURIResolver(uriResolver);
+			}, maximumIdle));
+		});
+	}
+
+	/**
+	 * @param systemId The systemId of the stylesheet, mapped through the catalog as a URI.
+	 * @return A pooled transformer for the compiled stylesheet which resolves <code>document()</code>, <code>xsl:include</code> and
+	 *         <code>xsl:import</code> through the catalog.
+	 */
+	public Pooled<Transformer> transformer(String systemId) {
+		return templatesCompiled(systemId).pool.borrow();
+	}
+
+	public URIResolver uriResolver() {
+		return uriResolver;
+	}
+
+	/**
+	 * @param systemId The systemId of the schema, mapped through the catalog as a URI.
+	 * @return A pooled validator for the compiled schema which resolves resources through the catalog.
+	 */
+	public Pooled<Validator> validator(String systemId) {
+		return schemaCompiled(systemId).pool.borrow();
+	}
+}
@@ -0,0 +1,129 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Comparator.naturalOrder;
+import static java.util.Comparator.nullsFirst;
+import static java.util.stream.Collectors.toList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Helpers for batch lookups.
+ */
+final class Batches {
+	
+	private static class Task<T> extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Function<T[], String[]> batch;
+		private final int from;
+		private final T[] inputs;
+		private final String[] results;
+		private final int to;
+
+		public Task(T[] inputs, String[] results, int from, int to, Function<T[], String[]> batch) {
+			this.inputs = inputs;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.batch = batch;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				String[] chunk = batch.apply(Arrays.copyOfRange(inputs, from, to));
+				System.arraycopy(chunk, 0, results, from, chunk.length);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Task<>(inputs, results, from, middle, batch), new Task<>(inputs, results, middle, to, batch));
+			}
+		}
+	}
+	
+	static final Comparator<ExternalIdentifier> EXTERNAL_IDENTIFIER_ORDER = Comparator
+		.comparing(ExternalIdentifier::getSystemId, nullsFirst(naturalOrder()))
+		.thenComparing(ExternalIdentifier::getPublicId, nullsFirst(naturalOrder()));
+	
+	static final int PARALLEL_THRESHOLD = 512;
+	
+	static final Comparator<String> URI_ORDER = nullsFirst(naturalOrder());
+	
+	/**
+	 * Looks up inputs through each mapper in turn; only the inputs which are still unmapped are passed to the next mapper (in their original relative
+	 * order).
+	 */
+	static <T, M> String[] cascade(T[] inputs, M[] mappers, BiFunction<M, T[], String[]> lookup) {
+		String[] results = new String[inputs.length];
+		int[] pending = new int[inputs.length];
+		int count = inputs.length;
+		for (int i = 0; i < count; i++) {
+			pending[i] = i;
+		}
+		for (int m = 0; m < mappers.length && count > 0; m++) {
+			T[] batch = Arrays.copyOf(inputs, count);
+			for (int i = 0; i < count; i++) {
+				batch[i] = inputs[pending[i]];
+			}
+			String[] mapped = lookup.apply(mappers[m], batch);
+			int remaining = 0;
+			for (int i = 0; i < count; i++) {
+				if (mapped[i] != null) {
+					results[pending[i]] = mapped[i];
+				} else {
+					pending[remaining++] = pending[i];
+				}
+			}
+			count = remaining;
+		}
+		return results;
+	}
+	
+	/**
+	 * Sorts the inputs (so that inputs sharing a prefix are adjacent) and removes duplicates before passing them to the given batch lookup. Results are
+	 * returned in the order of the original inputs.
+	 */
+	static <T> String[] distinct(T[] inputs, Comparator<? super T> order, Function<T[], String[]> batch) {
+		T[] sorted = inputs.clone();
+		Arrays.sort(sorted, order);
+		int count = 0;
+		for (T input : sorted) {
+			if (count == 0 || !Objects.equals(sorted[count - 1], input)) {
+				sorted[count++] = input;
+			}
+		}
+		T[] unique = Arrays.copyOf(sorted, count);
+		String[] mapped = batch.apply(unique);
+		String[] results = new String[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			results[i] = mapped[Arrays.binarySearch(unique, inputs[i], order)];
+		}
+		return results;
+	}
+	
+	static List<Optional<String>> optionals(String[] results) {
+		return Arrays.stream(results).map(Optional::ofNullable).collect(toList());
+	}
+	
+	/**
+	 * Splits the inputs in chunks which are looked up in parallel in the common fork-join pool.
+	 */
+	static <T> String[] parallel(T[] inputs, Function<T[], String[]> batch) {
+		if (inputs.length <= PARALLEL_THRESHOLD) {
+			return batch.apply(inputs);
+		}
+		String[] results = new String[inputs.length];
+		ForkJoinPool.commonPool().invoke(new Task<>(inputs, results, 0, inputs.length, batch));
+		return results;
+	}
+	
+	private Batches() {}
+}
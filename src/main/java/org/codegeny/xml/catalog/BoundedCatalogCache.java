@@ -0,0 +1,229 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Catalog cache with a bounded size (or weight) and LRU eviction. Entries may also expire after write or access and be held through soft references.
+ *
+ * Catalogs are loaded outside of any lock so that loading a catalog may resolve other catalogs (<code>nextCatalog</code>, <code>delegate*</code>) through
+ * the same cache. Concurrent misses for the same catalog share a single load; loads running while the cache is invalidated are returned to their callers
+ * but not cached.
+ */
+public class BoundedCatalogCache implements CatalogCache {
+
+	public static class Builder {
+
+		private long expireAfterAccess = -1;
+		private long expireAfterWrite = -1;
+		private long maximumWeight = Long.MAX_VALUE;
+		private boolean softValues;
+		private LongSupplier ticker = System::nanoTime;
+		private ToLongFunction<Catalog> weigher = catalog -> 1;
+
+		private Builder() {}
+
+		public BoundedCatalogCache build() {
+			return new BoundedCatalogCache(this);
+		}
+
+		public Builder expireAfterAccess(long duration, TimeUnit unit) {
+			this.expireAfterAccess = unit.toNanos(duration);
+			return this;
+		}
+
+		public Builder expireAfterWrite(long duration, TimeUnit unit) {
+			this.expireAfterWrite = unit.toNanos(duration);
+			return this;
+		}
+
+		public Builder maximumSize(long maximumSize) {
+			return maximumWeight(maximumSize, catalog -> 1);
+		}
+
+		public Builder maximumWeight(long maximumWeight, ToLongFunction<Catalog> weigher) {
+			if (maximumWeight <= 0) {
+				throw new IllegalArgumentException("maximumWeight must be positive");
+			}
+			this.maximumWeight = maximumWeight;
+			this.weigher = requireNonNull(weigher, "weigher cannot be null");
+			return this;
+		}
+
+		public Builder softValues() {
+			this.softValues = true;
+			return this;
+		}
+
+		Builder ticker(LongSupplier ticker) {
+			this.ticker = ticker;
+			return this;
+		}
+	}
+
+	private static class Entry {
+
+		private long accessTime;
+		private final Object value;
+		private final long weight;
+		private final long writeTime;
+
+		public Entry(Catalog catalog, boolean soft, long weight, long now) {
+			this.value = soft ? new SoftReference<>(catalog) : catalog;
+			this.weight = weight;
+			this.writeTime = now;
+			this.accessTime = now;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Catalog get() {
+			return value instanceof SoftReference<?> ? ((SoftReference<Catalog>) value).get() : (Catalog) value;
+		}
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final LongAdder evictionCount = new LongAdder();
+	private final long expireAfterAccess;
+	private final long expireAfterWrite;
+	private final LongAdder hitCount = new LongAdder();
+	private final long maximumWeight;
+	private final LongAdder missCount = new LongAdder();
+	private final CatalogLoads loads = new CatalogLoads(false);
+	private final boolean softValues;
+	private final LongSupplier ticker;
+	private final LongAdder totalLoadTime = new LongAdder();
+	// incremented by each invalidation (guarded by entries) so that loads started before it do not store stale catalogs
+	private long generation;
+	private long weight;
+	private final ToLongFunction<Catalog> weigher;
+
+	private BoundedCatalogCache(Builder builder) {
+		this.expireAfterAccess = builder.expireAfterAccess;
+		this.expireAfterWrite = builder.expireAfterWrite;
+		this.maximumWeight = builder.maximumWeight;
+		this.softValues = builder.softValues;
+		this.ticker = builder.ticker;
+		this.weigher = builder.weigher;
+	}
+
+	private void evict(Iterator<Entry> iterator, Entry entry) {
+		iterator.remove();
+		weight -= entry.weight;
+		evictionCount.increment();
+	}
+
+	private boolean expired(Entry entry, long now) {
+		return expireAfterWrite >= 0 && now - entry.writeTime >= expireAfterWrite || expireAfterAccess >= 0 && now - entry.accessTime >= expireAfterAccess;
+	}
+
+	private Catalog get(String systemId, long now) {
+		Entry entry = entries.get(systemId);
+		if (entry == null) {
+			return null;
+		}
+		Catalog catalog = entry.get();
+		if (catalog == null || expired(entry, now)) {
+			entries.remove(systemId);
+			weight -= entry.weight;
+			evictionCount.increment();
+			return null;
+		}
+		entry.accessTime = now;
+		return catalog;
+	}
+
+	public void invalidate(String systemId) {
+		synchronized (entries) {
+			generation++;
+			loads.forget(systemId);
+			Entry entry = entries.remove(systemId);
+			if (entry != null) {
+				weight -= entry.weight;
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			generation++;
+			loads.forgetAll();
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	@Override
+	public Catalog resolve(String systemId, Supplier<Catalog> supplier) {
+		synchronized (entries) {
+			Catalog catalog = get(systemId, ticker.getAsLong());
+			if (catalog != null) {
+				hitCount.increment();
+				return catalog;
+			}
+		}
+		return loads.load(systemId, () -> {
+			long observed;
+			synchronized (entries) {
+				observed = generation;
+				// the previous load may have completed between the first check and this one
+				Catalog loaded = get(systemId, ticker.getAsLong());
+				if (loaded != null) {
+					hitCount.increment();
+					return loaded;
+				}
+			}
+			missCount.increment();
+			long start = ticker.getAsLong();
+			Catalog catalog = requireNonNull(supplier.get(), "supplier cannot return null");
+			long now = ticker.getAsLong();
+			totalLoadTime.add(now - start);
+			store(systemId, catalog, now, observed);
+			return catalog;
+		});
+	}
+
+	private void store(String systemId, Catalog catalog, long now, long observed) {
+		synchronized (entries) {
+			if (generation != observed) {
+				return;
+			}
+			Entry entry = new Entry(catalog, softValues, weigher.applyAsLong(catalog), now);
+			Entry previous = entries.put(systemId, entry);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += entry.weight;
+			for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+				Entry eldest = iterator.next();
+				if (weight > maximumWeight || expired(eldest, now) || eldest.get() == null) {
+					evict(iterator, eldest);
+				} else {
+					break;
+				}
+			}
+		}
+	}
+
+	public long size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public CacheStatistics statistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+	}
+}
@@ -0,0 +1,52 @@
+package org.codegeny.xml.catalog;
+
+/**
+ * Immutable snapshot of cache counters.
+ */
+public final class CacheStatistics {
+
+	private final long evictionCount;
+	private final long hitCount;
+	private final long missCount;
+	private final long totalLoadTime;
+
+	public CacheStatistics(long hitCount, long missCount, long totalLoadTime, long evictionCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.totalLoadTime = totalLoadTime;
+		this.evictionCount = evictionCount;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public double getHitRate() {
+		long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * @return The total time spent loading values (in nanoseconds).
+	 */
+	public long getTotalLoadTime() {
+		return totalLoadTime;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CacheStatistics[hits=%d, misses=%d, loadTime=%dns, evictions=%d]", hitCount, missCount, totalLoadTime, evictionCount);
+	}
+}
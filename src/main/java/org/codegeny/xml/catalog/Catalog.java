@@ -1,5 +1,7 @@
 package org.codegeny.xml.catalog;
 
+import java.util.Optional;
+
 import javax.xml.transform.URIResolver;
 
 import org.w3c.dom.ls.LSResourceResolver;
@@ -12,4 +14,30 @@ import org.w3c.dom.ls.LSResourceResolver;
  * @see <a href="https://www.oasis-open.org/committees/download.php/14809/xml-catalogs.html">XML Catalogs</a>
  * @author Xavier Dury
  */
-public interface Catalog extends ExternalIdentifierMapper, URIMapper {}
+public interface Catalog extends ExternalIdentifierMapper, URIMapper {
+
+	/**
+	 * Implemented on top of {@link #lookupExternalIdentifier(String, String)}.
+	 */
+	@Override
+	default Optional<String> mapExternalIdentifier(String publicId, String systemId) {
+		return Optional.ofNullable(lookupExternalIdentifier(publicId, systemId));
+	}
+
+	/**
+	 * Implemented on top of {@link #lookupURI(String)}.
+	 */
+	@Override
+	default Optional<String> mapURI(String uri) {
+		return Optional.ofNullable(lookupURI(uri));
+	}
+
+	/**
+	 * Catalogs must implement the allocation-free lookups, the {@link #mapExternalIdentifier(String, String) mapping} methods are built on top of them.
+	 */
+	@Override
+	String lookupExternalIdentifier(String publicId, String systemId);
+
+	@Override
+	String lookupURI(String uri);
+}
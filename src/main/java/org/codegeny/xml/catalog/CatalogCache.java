@@ -11,5 +11,13 @@ public interface CatalogCache {
 
 	CatalogCache NO_CACHE = (systemId, supplier) -> supplier.get();
 
+	/**
+	 * Returns the catalog for the given systemId, loading it through the supplier if needed. The supplier may be called again later to reload the
+	 * catalog.
+	 * 
+	 * @param systemId The (resolved) systemId of the catalog.
+	 * @param supplier The supplier which loads the catalog.
+	 * @return The catalog.
+	 */
 	Catalog resolve(String systemId, Supplier<Catalog> supplier);
 }
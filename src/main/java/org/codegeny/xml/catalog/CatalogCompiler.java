@@ -0,0 +1,297 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Collections.singletonList;
+import static java.util.Comparator.reverseOrder;
+import static org.codegeny.xml.catalog.CompiledCatalog.DELEGATE;
+import static org.codegeny.xml.catalog.CompiledCatalog.EXACT;
+import static org.codegeny.xml.catalog.CompiledCatalog.MAGIC;
+import static org.codegeny.xml.catalog.CompiledCatalog.NEXT_CATALOG;
+import static org.codegeny.xml.catalog.CompiledCatalog.PREFIX;
+import static org.codegeny.xml.catalog.CompiledCatalog.RESULT;
+import static org.codegeny.xml.catalog.CompiledCatalog.REWRITE;
+import static org.codegeny.xml.catalog.CompiledCatalog.SUFFIX;
+import static org.codegeny.xml.catalog.CompiledCatalog.VERSION;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.codegeny.xml.catalog.EntryType.Matching;
+
+/**
+ * Compiles a catalog graph into the binary format read by {@link CompiledCatalog}. Compilation walks the whole graph (loading lazy catalogs, unwrapping
+ * instrumented, memoizing or reloading ones and inlining composites) and sorts entries in resolution order so that nothing is left to be done when the
+ * compiled catalog is loaded.
+ *
+ * This class can also be run from the command line: <code>CatalogCompiler &lt;catalog&gt; &lt;output&gt;</code> where <code>catalog</code> is a URI or a
+ * file path.
+ */
+public final class CatalogCompiler {
+
+	private static class Output {
+
+		private byte[] bytes = new byte[4096];
+		private int position;
+
+		private void ensure(int length) {
+			if (position + length > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+			}
+		}
+
+		public int getInt(int offset) {
+			return ByteBuffer.wrap(bytes).getInt(offset);
+		}
+
+		public int position() {
+			return position;
+		}
+
+		public void putByte(int value) {
+			ensure(1);
+			bytes[position++] = (byte) value;
+		}
+
+		public void putChar(char value) {
+			ensure(2);
+			bytes[position++] = (byte) (value >>> 8);
+			bytes[position++] = (byte) value;
+		}
+
+		public void putInt(int value) {
+			ensure(4);
+			putInt(position, value);
+			position += 4;
+		}
+
+		public void putInt(int offset, int value) {
+			ByteBuffer.wrap(bytes).putInt(offset, value);
+		}
+
+		public byte[] toByteArray() {
+			return Arrays.copyOf(bytes, position);
+		}
+	}
+
+	/**
+	 * Compiles the given catalog graph.
+	 *
+	 * @param catalog The root catalog.
+	 * @return A (heap) buffer containing the compiled catalog.
+	 * @throws CatalogException If the graph contains a catalog which cannot be compiled.
+	 */
+	public static ByteBuffer compile(Catalog catalog) {
+		return ByteBuffer.wrap(new CatalogCompiler().write(catalog));
+	}
+
+	/**
+	 * Compiles the given catalog graph into a file which can later be opened with {@link CompiledCatalog#open(Path)}.
+	 *
+	 * @param catalog The root catalog.
+	 * @param path The output file.
+	 * @throws IOException If the file cannot be written.
+	 * @throws CatalogException If the graph contains a catalog which cannot be compiled.
+	 */
+	public static void compile(Catalog catalog, Path path) throws IOException {
+		Files.write(path, new CatalogCompiler().write(catalog));
+	}
+
+	public static void main(String... args) throws IOException {
+		if (args.length != 2) {
+			System.err.printf("Usage: %s <catalog> <output>%n", CatalogCompiler.class.getName());
+			System.exit(2);
+		}
+		URI uri = URI.create(args[0]);
+		String systemId = uri.isAbsolute() ? uri.toString() : Paths.get(args[0]).toUri().toString();
+		// catalogs are cached so that shared ones are only parsed once and cyclic references end
+		Catalog catalog = new CatalogParser((href, base) -> new StreamSource(base == null ? href : URI.create(base).resolve(href).toString()), new SimpleCatalogCache()).parse(systemId);
+		compile(catalog, Paths.get(args[1]));
+	}
+
+	private Catalog unwrap(Catalog catalog) {
+		while (true) {
+			if (catalog instanceof LazyCatalog) {
+				catalog = ((LazyCatalog) catalog).get();
+			} else if (catalog instanceof FlatCatalog) {
+				catalog = ((FlatCatalog) catalog).getCatalog();
+			} else if (catalog instanceof InstrumentedCatalog) {
+				catalog = ((InstrumentedCatalog) catalog).getCatalog();
+			} else if (catalog instanceof MemoizingCatalog) {
+				catalog = ((MemoizingCatalog) catalog).getCatalog();
+			} else if (catalog instanceof MutableCatalog) {
+				catalog = snapshots.computeIfAbsent((MutableCatalog) catalog, MutableCatalog::snapshot);
+			} else if (catalog instanceof ReloadingCatalogCache.ReloadingCatalog) {
+				catalog = ((ReloadingCatalogCache.ReloadingCatalog) catalog).getCatalog();
+			} else {
+				return catalog;
+			}
+		}
+	}
+
+	private final List<Catalog> catalogs = new ArrayList<>();
+	private final Map<Catalog, Integer> indexes = new IdentityHashMap<>();
+	private final Output output = new Output();
+	// each mutable catalog is only snapshot once so that it keeps its identity (and cycles through it end)
+	private final Map<MutableCatalog, Catalog> snapshots = new IdentityHashMap<>();
+	private final Map<Integer, String> strings = new LinkedHashMap<>();
+
+	private CatalogCompiler() {}
+
+	private int index(Catalog catalog) {
+		Catalog unwrapped = unwrap(catalog);
+		Integer index = indexes.get(unwrapped);
+		if (index == null) {
+			indexes.put(unwrapped, index = catalogs.size());
+			catalogs.add(unwrapped);
+		}
+		return index;
+	}
+
+	private void putString(String value) {
+		strings.put(output.position(), value);
+		output.putInt(-1);
+	}
+
+	private byte[] write(Catalog root) {
+		output.putInt(MAGIC);
+		output.putInt(VERSION);
+		output.putInt(0); // catalog count
+		output.putInt(0); // catalog table offset
+		index(root);
+		List<Integer> offsets = new ArrayList<>();
+		// catalogs referenced while writing are appended to the list
+		for (int i = 0; i < catalogs.size(); i++) {
+			offsets.add(output.position());
+			writeCatalog(catalogs.get(i));
+		}
+		output.putInt(8, offsets.size());
+		output.putInt(12, output.position());
+		offsets.forEach(output::putInt);
+		Map<String, Integer> pool = new HashMap<>();
+		strings.forEach((offset, value) -> {
+			Integer position = pool.get(value);
+			if (position == null) {
+				pool.put(value, position = output.position());
+				boolean wide = value.chars().anyMatch(c -> c > 0xFF);
+				output.putInt(value.length() << 1 | (wide ? 1 : 0));
+				for (int i = 0; i < value.length(); i++) {
+					if (wide) {
+						output.putChar(value.charAt(i));
+					} else {
+						output.putByte(value.charAt(i));
+					}
+				}
+			}
+			output.putInt(offset, position);
+		});
+		return output.toByteArray();
+	}
+
+	private void writeCatalog(Catalog catalog) {
+		if (catalog instanceof CatalogImpl) {
+			List<Entry> entries = ((CatalogImpl) catalog).getEntries();
+			writePhases(CatalogImpl.runs(entries, EntryType::getExternalIdentifierPriority), CatalogImpl.runs(entries, EntryType::getURIPriority));
+		} else if (catalog instanceof CompositeCatalog) {
+			List<List<Entry>> runs = ((CompositeCatalog) catalog).getCatalogs().stream().map(c -> singletonList(Entry.nextCatalog(c))).collect(Collectors.toList());
+			writePhases(runs, runs);
+		} else {
+			throw new CatalogException(String.format("Cannot compile catalog of type '%s'", catalog.getClass().getName()));
+		}
+	}
+
+	private void writeEntry(Entry entry) {
+		switch (entry.getType()) {
+		case DELEGATE_PUBLIC:
+		case DELEGATE_SYSTEM:
+		case DELEGATE_URI:
+			output.putByte(DELEGATE);
+			output.putByte(entry.getPrefer() == Prefer.SYSTEM ? 1 : 0);
+			output.putInt(index(entry.getCatalog()));
+			break;
+		case REWRITE_SYSTEM:
+		case REWRITE_URI:
+			output.putByte(REWRITE);
+			output.putByte(0);
+			putString(entry.getTarget());
+			break;
+		default:
+			output.putByte(RESULT);
+			output.putByte(entry.getPrefer() == Prefer.SYSTEM ? 1 : 0);
+			putString(entry.getTarget());
+		}
+	}
+
+	private void writePhase(List<Entry> run) {
+		EntryType type = run.get(0).getType();
+		if (type.getMatching() == null) {
+			output.putByte(NEXT_CATALOG);
+			output.putByte(0);
+			output.putInt(index(run.get(0).getCatalog()));
+			return;
+		}
+		boolean suffix = type.getMatching() == Matching.SUFFIX;
+		output.putByte(type.getMatching() == Matching.EXACT ? EXACT : suffix ? SUFFIX : PREFIX);
+		output.putByte(type.isKeyedByPublicId() ? 1 : 0);
+		Map<String, List<Entry>> groups = new LinkedHashMap<>();
+		run.forEach(e -> groups.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(e));
+		if (type.getMatching() != Matching.EXACT) {
+			List<Integer> lengths = groups.keySet().stream().map(String::length).distinct().sorted(reverseOrder()).collect(Collectors.toList());
+			output.putInt(lengths.size());
+			lengths.forEach(output::putInt);
+		}
+		// open addressing with a load factor of at most 0.5 so that probing always ends on an empty slot
+		int capacity = Integer.highestOneBit(Math.max(groups.size(), 1)) << 2;
+		output.putInt(capacity - 1);
+		int slots = output.position();
+		for (int i = 0; i < capacity; i++) {
+			output.putInt(-1);
+		}
+		for (Map.Entry<String, List<Entry>> group : groups.entrySet()) {
+			String key = group.getKey();
+			int hash = CompiledCatalog.hash(key, key.length(), suffix);
+			int slot = CompiledCatalog.mix(hash) & capacity - 1;
+			while (output.getInt(slots + 4 * slot) >= 0) {
+				slot = slot + 1 & capacity - 1;
+			}
+			output.putInt(slots + 4 * slot, output.position());
+			output.putInt(hash);
+			putString(key);
+			output.putInt(group.getValue().size());
+			group.getValue().forEach(this::writeEntry);
+		}
+	}
+
+	private void writePhases(List<List<Entry>> externalIdentifierRuns, List<List<Entry>> uriRuns) {
+		List<List<Entry>> runs = new ArrayList<>(externalIdentifierRuns);
+		runs.addAll(uriRuns);
+		// both phase tables come first so that URI phases can be found without walking external identifier ones
+		output.putInt(externalIdentifierRuns.size());
+		int table = output.position();
+		for (int i = 0; i < runs.size(); i++) {
+			if (i == externalIdentifierRuns.size()) {
+				output.putInt(uriRuns.size());
+			}
+			output.putInt(-1);
+		}
+		if (uriRuns.isEmpty()) {
+			output.putInt(0);
+		}
+		for (int i = 0; i < runs.size(); i++) {
+			output.putInt(table + 4 * i + (i < externalIdentifierRuns.size() ? 0 : 4), output.position());
+			writePhase(runs.get(i));
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Comparator.comparingInt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.codegeny.xml.catalog.EntryType.Matching;
+
+/**
+ * Catalog produced by {@link CatalogBuilder}. Entries are compiled into an array of mappers in resolution order where consecutive entries of the same type
+ * are merged into a single indexed mapper (hash map for exact keys, trie for prefixes or suffixes).
+ *
+ * A catalog is evaluated at most once per resolution (see {@link Traversal}): when it is reached again through another <code>nextCatalog</code> or
+ * <code>delegate*</code> entry (or through a cycle), it is skipped. Matching delegates are consulted from the longest to the shortest start string and
+ * a catalog delegated to for several of them is thus only consulted once.
+ */
+class CatalogImpl implements Catalog {
+
+	/**
+	 * Sorts entries in resolution order (by priority, longest key first, then by declaration order) and splits them into runs of entries which can share
+	 * the same index. Entries without key (<code>nextCatalog</code>) always form their own run.
+	 */
+	static List<List<Entry>> runs(List<Entry> entries, ToIntFunction<EntryType> priority) {
+		List<Entry> sorted = new ArrayList<>();
+		entries.stream().filter(e -> priority.applyAsInt(e.getType()) > 0).forEach(sorted::add);
+		sorted.sort(comparingInt((Entry e) -> priority.applyAsInt(e.getType())).thenComparing(comparingInt(Entry::size).reversed()));
+		List<List<Entry>> runs = new ArrayList<>();
+		List<Entry> run = null;
+		for (Entry entry : sorted) {
+			if (run == null || entry.getType().getMatching() == null || !sameRun(run.get(0), entry, priority)) {
+				runs.add(run = new ArrayList<>());
+			}
+			run.add(entry);
+		}
+		return runs;
+	}
+
+	private static boolean sameRun(Entry first, Entry entry, ToIntFunction<EntryType> priority) {
+		return priority.applyAsInt(first.getType()) == priority.applyAsInt(entry.getType()) && first.getType().getMatching() == entry.getType().getMatching();
+	}
+
+	static ExternalIdentifierMapper externalIdentifierIndex(List<Entry> run) {
+		EntryType type = run.get(0).getType();
+		boolean keyedByPublicId = type.isKeyedByPublicId();
+		if (type.getMatching() == null) {
+			return run.get(0).externalIdentifierMapper();
+		} else if (type.getMatching() == Matching.EXACT) {
+			Map<String, List<ExternalIdentifierMapper>> map = map(run, Entry::externalIdentifierMapper);
+			return (ExternalIdentifierLookup) (p, s) -> lookupExternalIdentifier(map.getOrDefault(keyedByPublicId ? p : s, emptyList()), p, s);
+		} else {
+			Trie<ExternalIdentifierMapper> trie = trie(run, Entry::externalIdentifierMapper);
+			return new ExternalIdentifierLookup() {
+
+				@Override
+				public String lookupExternalIdentifier(String publicId, String systemId) {
+					return CatalogImpl.lookupExternalIdentifier(trie.longestMatch(keyedByPublicId ? publicId : systemId), publicId, systemId);
+				}
+
+				@Override
+				public String[] lookupExternalIdentifiers(ExternalIdentifier[] externalIdentifiers) {
+					String[] keys = new String[externalIdentifiers.length];
+					for (int i = 0; i < keys.length; i++) {
+						keys[i] = keyedByPublicId ? externalIdentifiers[i].getPublicId() : externalIdentifiers[i].getSystemId();
+					}
+					Trie.Node<ExternalIdentifierMapper>[] nodes = trie.longestMatches(keys);
+					String[] results = new String[keys.length];
+					for (int i = 0; i < keys.length; i++) {
+						results[i] = CatalogImpl.lookupExternalIdentifier(nodes[i], externalIdentifiers[i].getPublicId(), externalIdentifiers[i].getSystemId());
+					}
+					return results;
+				}
+			};
+		}
+	}
+
+	static URIMapper uriIndex(List<Entry> run) {
+		EntryType type = run.get(0).getType();
+		if (type.getMatching() == null) {
+			return run.get(0).uriMapper();
+		} else if (type.getMatching() == Matching.EXACT) {
+			Map<String, List<URIMapper>> map = map(run, Entry::uriMapper);
+			return (URILookup) u -> lookupURI(map.getOrDefault(u, emptyList()), u);
+		} else {
+			Trie<URIMapper> trie = trie(run, Entry::uriMapper);
+			return new URILookup() {
+
+				@Override
+				public String lookupURI(String uri) {
+					return CatalogImpl.lookupURI(trie.longestMatch(uri), uri);
+				}
+
+				@Override
+				public String[] lookupURIs(String[] uris) {
+					Trie.Node<URIMapper>[] nodes = trie.longestMatches(uris);
+					String[] results = new String[uris.length];
+					for (int i = 0; i < uris.length; i++) {
+						results[i] = CatalogImpl.lookupURI(nodes[i], uris[i]);
+					}
+					return results;
+				}
+			};
+		}
+	}
+
+	static ExternalIdentifierMapper instrument(ExternalIdentifierMapper mapper, EntryType type, CatalogListener listener) {
+		return listener == null ? mapper : (ExternalIdentifierLookup) (p, s) -> {
+			String result = mapper.lookupExternalIdentifier(p, s);
+			if (result != null) {
+				listener.entryMatched(type);
+			} else {
+				listener.entryMissed(type);
+			}
+			return result;
+		};
+	}
+
+	static URIMapper instrument(URIMapper mapper, EntryType type, CatalogListener listener) {
+		return listener == null ? mapper : (URILookup) u -> {
+			String result = mapper.lookupURI(u);
+			if (result != null) {
+				listener.entryMatched(type);
+			} else {
+				listener.entryMissed(type);
+			}
+			return result;
+		};
+	}
+
+	static <T> Map<String, List<T>> map(List<Entry> run, Function<Entry, T> mapper) {
+		Map<String, List<T>> map = new HashMap<>();
+		run.forEach(e -> map.computeIfAbsent(e.getKey(), k -> new ArrayList<>(1)).add(mapper.apply(e)));
+		return map;
+	}
+
+	private static <T> Trie<T> trie(List<Entry> run, Function<Entry, T> mapper) {
+		Trie<T> trie = run.get(0).getType().getMatching() == Matching.SUFFIX ? Trie.suffixes() : Trie.prefixes();
+		run.forEach(e -> trie.put(e.getKey(), mapper.apply(e)));
+		return trie.link();
+	}
+
+	static String lookupExternalIdentifier(List<ExternalIdentifierMapper> candidates, String publicId, String systemId) {
+		for (int i = 0, size = candidates.size(); i < size; i++) {
+			String result = candidates.get(i).lookupExternalIdentifier(publicId, systemId);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static String lookupExternalIdentifier(Trie.Node<ExternalIdentifierMapper> node, String publicId, String systemId) {
+		for (; node != null; node = node.getNext()) {
+			String result = lookupExternalIdentifier(node.getValues(), publicId, systemId);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static String lookupURI(Trie.Node<URIMapper> node, String uri) {
+		for (; node != null; node = node.getNext()) {
+			String result = lookupURI(node.getValues(), uri);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	static String lookupURI(List<URIMapper> candidates, String uri) {
+		for (int i = 0, size = candidates.size(); i < size; i++) {
+			String result = candidates.get(i).lookupURI(uri);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private final List<Entry> entries;
+	private final ExternalIdentifierMapper[] externalIdentifierMappers;
+	private final CatalogListener listener;
+	private final URIMapper[] uriMappers;
+
+	/**
+	 * @param entries The entries in declaration order.
+	 * @param listener The listener notified of matches and misses for each index (may be <code>null</code>, in which case indexes are not instrumented
+	 *            at all).
+	 */
+	public CatalogImpl(List<Entry> entries, CatalogListener listener) {
+		this.entries = unmodifiableList(new ArrayList<>(entries));
+		this.listener = listener;
+		this.externalIdentifierMappers = runs(entries, EntryType::getExternalIdentifierPriority).stream()
+			.map(run -> instrument(externalIdentifierIndex(run), run.get(0).getType(), listener))
+			.toArray(ExternalIdentifierMapper[]::new);
+		this.uriMappers = runs(entries, EntryType::getURIPriority).stream()
+			.map(run -> instrument(uriIndex(run), run.get(0).getType(), listener))
+			.toArray(URIMapper[]::new);
+	}
+
+	/**
+	 * @return The entries of this catalog in declaration order.
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return The listener for this catalog's indexes (may be <code>null</code>).
+	 */
+	public CatalogListener getListener() {
+		return listener;
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(this)) {
+				for (ExternalIdentifierMapper mapper : externalIdentifierMappers) {
+					String result = mapper.lookupExternalIdentifier(publicId, systemId);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String[] lookupExternalIdentifiers(ExternalIdentifier[] externalIdentifiers) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(true);
+		try {
+			if (!traversal.visit(this)) {
+				return new String[externalIdentifiers.length];
+			}
+			try {
+				return Batches.distinct(externalIdentifiers, Batches.EXTERNAL_IDENTIFIER_ORDER, unique -> Batches.cascade(unique, externalIdentifierMappers, ExternalIdentifierMapper::lookupExternalIdentifiers));
+			} finally {
+				traversal.leave();
+			}
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(this)) {
+				for (URIMapper mapper : uriMappers) {
+					String result = mapper.lookupURI(uri);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String[] lookupURIs(String[] uris) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(true);
+		try {
+			if (!traversal.visit(this)) {
+				return new String[uris.length];
+			}
+			try {
+				return Batches.distinct(uris, Batches.URI_ORDER, unique -> Batches.cascade(unique, uriMappers, URIMapper::lookupURIs));
+			} finally {
+				traversal.leave();
+			}
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+}
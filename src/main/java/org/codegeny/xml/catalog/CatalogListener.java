@@ -0,0 +1,68 @@
+package org.codegeny.xml.catalog;
+
+/**
+ * Listener for catalog events. All methods do nothing by default so that implementations only override the events they are interested in.
+ *
+ * Listeners are opt-in: catalogs built without a listener are not instrumented at all. To be notified of all events, pass the listener to
+ * {@link CatalogParser} (or {@link CatalogBuilder#newCatalog(Prefer, String, CatalogListener)}) and wrap the resulting catalog in an
+ * {@link InstrumentedCatalog}. Methods may be called concurrently by multiple threads.
+ * @see CatalogMetrics
+ */
+public interface CatalogListener {
+
+	/**
+	 * Called when a catalog was found in the {@link CatalogCache}.
+	 */
+	default void cacheHit(String systemId) {}
+
+	/**
+	 * Called when a catalog was not found in the {@link CatalogCache} and had to be loaded.
+	 */
+	default void cacheMiss(String systemId) {}
+
+	/**
+	 * Called when a catalog was loaded (resolved and parsed).
+	 *
+	 * @param systemId The systemId of the catalog.
+	 * @param duration The load duration in nanoseconds.
+	 */
+	default void catalogLoaded(String systemId, long duration) {}
+
+	/**
+	 * Called when a modified catalog could not be reloaded (by a {@link ReloadingCatalogCache}), the previous version of the catalog is kept.
+	 *
+	 * @param systemId The systemId of the catalog.
+	 * @param exception The reason of the failure.
+	 */
+	default void catalogReloadFailed(String systemId, Exception exception) {}
+
+	/**
+	 * Called when entries of the given type matched an identifier. For <code>delegate*</code> and <code>nextCatalog</code> entries, this means that
+	 * the referenced catalog mapped the identifier.
+	 */
+	default void entryMatched(EntryType type) {}
+
+	/**
+	 * Called when entries of the given type were consulted but did not map an identifier.
+	 */
+	default void entryMissed(EntryType type) {}
+
+	/**
+	 * Called after an external identifier lookup.
+	 *
+	 * @param publicId The publicId.
+	 * @param systemId The systemId.
+	 * @param result The result or <code>null</code> if the external identifier was not mapped.
+	 * @param duration The lookup duration in nanoseconds.
+	 */
+	default void externalIdentifierLookedUp(String publicId, String systemId, String result, long duration) {}
+
+	/**
+	 * Called after an URI lookup.
+	 *
+	 * @param uri The URI.
+	 * @param result The result or <code>null</code> if the URI was not mapped.
+	 * @param duration The lookup duration in nanoseconds.
+	 */
+	default void uriLookedUp(String uri, String result, long duration) {}
+}
@@ -0,0 +1,127 @@
+package org.codegeny.xml.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Catalog loads in flight, keyed by system id, so that each catalog is loaded once by the first thread which needs it while other threads wait for it.
+ *
+ * Loads are performed outside of any lock so that loading a catalog may load other catalogs, possibly in parallel. When waiting for a catalog would
+ * dead-lock (a cyclic reference, either within one thread or across threads), a {@link LazyCatalog} is returned instead so that the cycle is only followed
+ * once all catalogs are loaded. Failed loads are always forgotten.
+ */
+final class CatalogLoads {
+
+	private static class Load {
+
+		private final CompletableFuture<Catalog> future = new CompletableFuture<>();
+		// cleared once completed so that retained loads do not keep their thread (and its context class loader) reachable
+		private volatile Thread owner = Thread.currentThread();
+
+		public void complete(Catalog catalog) {
+			owner = null;
+			future.complete(catalog);
+		}
+
+		public void completeExceptionally(Throwable throwable) {
+			owner = null;
+			future.completeExceptionally(throwable);
+		}
+
+		public Catalog join() {
+			try {
+				return future.join();
+			} catch (CompletionException completionException) {
+				if (completionException.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) completionException.getCause();
+				}
+				if (completionException.getCause() instanceof Error) {
+					throw (Error) completionException.getCause();
+				}
+				throw completionException;
+			}
+		}
+	}
+
+	private final ConcurrentMap<String, Load> loads = new ConcurrentHashMap<>();
+	private final boolean retain;
+	// load each thread is waiting for, guarded by itself
+	private final Map<Thread, Load> waiting = new HashMap<>();
+
+	/**
+	 * @param retain If completed loads are kept (so that catalogs are never loaded again) rather than forgotten.
+	 */
+	public CatalogLoads(boolean retain) {
+		this.retain = retain;
+	}
+
+	private Catalog await(Load load) {
+		if (load.future.isDone()) {
+			return load.join();
+		}
+		Thread current = Thread.currentThread();
+		synchronized (waiting) {
+			// follow the chain of waiting threads, if it leads back to the current thread, waiting would never end
+			for (Load next = load; next != null; next = waiting.get(next.owner)) {
+				if (next.owner == current) {
+					return new LazyCatalog(load::join);
+				}
+			}
+			waiting.put(current, load);
+		}
+		try {
+			return load.join();
+		} finally {
+			synchronized (waiting) {
+				waiting.remove(current);
+			}
+		}
+	}
+
+	/**
+	 * Forgets the load of the given catalog so that the next caller starts a new one, threads already waiting for it still get its result.
+	 */
+	public void forget(String systemId) {
+		loads.remove(systemId);
+	}
+
+	public void forgetAll() {
+		loads.clear();
+	}
+
+	/**
+	 * Loads the given catalog or waits for the load already in flight.
+	 *
+	 * @param systemId The system id of the catalog.
+	 * @param supplier The supplier performing the load (only called by the thread which starts it), it must not return <code>null</code>.
+	 * @return The loaded catalog.
+	 */
+	public Catalog load(String systemId, Supplier<Catalog> supplier) {
+		Load load = loads.get(systemId);
+		if (load == null) {
+			Load loading = new Load();
+			load = loads.putIfAbsent(systemId, loading);
+			if (load == null) {
+				Catalog catalog;
+				try {
+					catalog = supplier.get();
+				} catch (RuntimeException | Error throwable) {
+					loads.remove(systemId, loading);
+					loading.completeExceptionally(throwable);
+					throw throwable;
+				}
+				if (!retain) {
+					loads.remove(systemId, loading);
+				}
+				loading.complete(catalog);
+				return catalog;
+			}
+		}
+		return await(load);
+	}
+}
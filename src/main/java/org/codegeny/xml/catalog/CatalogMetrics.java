@@ -0,0 +1,203 @@
+package org.codegeny.xml.catalog;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Listener which aggregates catalog events into metrics, exposed through JMX with {@link #register(String)}.
+ *
+ * <pre>
+ * CatalogMetrics metrics = new CatalogMetrics();
+ * metrics.register("default");
+ * Catalog catalog = new CatalogParser(uriResolver, catalogCache, false, metrics).parse("catalog.xml");
+ * </pre>
+ */
+public class CatalogMetrics implements CatalogListener, CatalogMetricsMXBean {
+
+	private static final String[] ENTRY_TYPES = Arrays.stream(EntryType.values()).map(Enum::name).toArray(String[]::new);
+	private static final String[] LATENCY_BUCKETS = { "<1us", "<10us", "<100us", "<1ms", "<10ms", ">=10ms" };
+	private static final int MAXIMUM_CATALOG_LOAD_TIMES = 1000;
+	private static final int RECENT_MISSES = 100;
+
+	private static LongAdder[] adders(int length) {
+		return IntStream.range(0, length).mapToObj(i -> new LongAdder()).toArray(LongAdder[]::new);
+	}
+
+	private static Map<String, Long> counts(LongAdder[] adders, String[] names) {
+		Map<String, Long> counts = new TreeMap<>();
+		for (int i = 0; i < adders.length; i++) {
+			counts.put(names[i], adders[i].sum());
+		}
+		return counts;
+	}
+
+	private final LongAdder cacheHitCount = new LongAdder();
+	private final LongAdder cacheMissCount = new LongAdder();
+	private final ConcurrentMap<String, Long> catalogLoadTimes = new ConcurrentHashMap<>();
+	private final LongAdder[] entryMatchCounts = adders(EntryType.values().length);
+	private final LongAdder[] entryMissCounts = adders(EntryType.values().length);
+	private final LongAdder[] lookupLatencies = adders(LATENCY_BUCKETS.length);
+	private final LongAdder lookupMissCount = new LongAdder();
+	private final AtomicInteger recentMissIndex = new AtomicInteger();
+	// unmapped URIs (strings) or external identifiers, only formatted when read
+	private final AtomicReferenceArray<Object> recentMisses = new AtomicReferenceArray<>(RECENT_MISSES);
+
+	@Override
+	public void cacheHit(String systemId) {
+		cacheHitCount.increment();
+	}
+
+	@Override
+	public void cacheMiss(String systemId) {
+		cacheMissCount.increment();
+	}
+
+	@Override
+	public void catalogLoaded(String systemId, long duration) {
+		// a gauge of the last load of each catalog, new catalogs are ignored once the bound is reached
+		if (systemId != null && (catalogLoadTimes.size() < MAXIMUM_CATALOG_LOAD_TIMES || catalogLoadTimes.containsKey(systemId))) {
+			catalogLoadTimes.put(systemId, duration);
+		}
+	}
+
+	@Override
+	public void entryMatched(EntryType type) {
+		entryMatchCounts[type.ordinal()].increment();
+	}
+
+	@Override
+	public void entryMissed(EntryType type) {
+		entryMissCounts[type.ordinal()].increment();
+	}
+
+	@Override
+	public void externalIdentifierLookedUp(String publicId, String systemId, String result, long duration) {
+		lookedUp(result == null ? new ExternalIdentifier(publicId, systemId) : null, duration);
+	}
+
+	@Override
+	public long getCacheHitCount() {
+		return cacheHitCount.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hitCount = getCacheHitCount();
+		long requestCount = hitCount + getCacheMissCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	@Override
+	public long getCacheMissCount() {
+		return cacheMissCount.sum();
+	}
+
+	@Override
+	public Map<String, Long> getCatalogLoadTimes() {
+		return new TreeMap<>(catalogLoadTimes);
+	}
+
+	@Override
+	public Map<String, Long> getEntryMatchCounts() {
+		return counts(entryMatchCounts, ENTRY_TYPES);
+	}
+
+	@Override
+	public Map<String, Long> getEntryMissCounts() {
+		return counts(entryMissCounts, ENTRY_TYPES);
+	}
+
+	@Override
+	public long getLookupCount() {
+		long lookupCount = 0;
+		for (LongAdder latency : lookupLatencies) {
+			lookupCount += latency.sum();
+		}
+		return lookupCount;
+	}
+
+	@Override
+	public Map<String, Long> getLookupLatencyHistogram() {
+		Map<String, Long> histogram = new LinkedHashMap<>();
+		for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+			histogram.put(LATENCY_BUCKETS[i], lookupLatencies[i].sum());
+		}
+		return histogram;
+	}
+
+	@Override
+	public long getLookupMissCount() {
+		return lookupMissCount.sum();
+	}
+
+	@Override
+	public String[] getRecentMisses() {
+		return IntStream.range(0, RECENT_MISSES).mapToObj(recentMisses::get).filter(miss -> miss != null).map(Object::toString).toArray(String[]::new);
+	}
+
+	private void lookedUp(Object miss, long duration) {
+		int bucket = 0;
+		for (long limit = 1000; bucket < LATENCY_BUCKETS.length - 1 && duration >= limit; limit *= 10) {
+			bucket++;
+		}
+		lookupLatencies[bucket].increment();
+		if (miss != null) {
+			lookupMissCount.increment();
+			recentMisses.set(Math.floorMod(recentMissIndex.getAndIncrement(), RECENT_MISSES), miss);
+		}
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server under <code>org.codegeny.xml.catalog:type=CatalogMetrics,name=&lt;name&gt;</code>.
+	 *
+	 * @param name The name of these metrics.
+	 * @return The name under which these metrics were registered.
+	 * @throws CatalogException If these metrics could not be registered.
+	 */
+	public ObjectName register(String name) {
+		try {
+			ObjectName objectName = new ObjectName(String.format("%s:type=%s,name=%s", CatalogMetrics.class.getPackage().getName(), CatalogMetrics.class.getSimpleName(), ObjectName.quote(name)));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException jmException) {
+			throw new CatalogException(String.format("Could not register catalog metrics '%s'", name), jmException);
+		}
+	}
+
+	@Override
+	public void reset() {
+		cacheHitCount.reset();
+		cacheMissCount.reset();
+		catalogLoadTimes.clear();
+		for (LongAdder adder : entryMatchCounts) {
+			adder.reset();
+		}
+		for (LongAdder adder : entryMissCounts) {
+			adder.reset();
+		}
+		for (LongAdder adder : lookupLatencies) {
+			adder.reset();
+		}
+		lookupMissCount.reset();
+		for (int i = 0; i < RECENT_MISSES; i++) {
+			recentMisses.set(i, null);
+		}
+	}
+
+	@Override
+	public void uriLookedUp(String uri, String result, long duration) {
+		lookedUp(result == null ? uri : null, duration);
+	}
+}
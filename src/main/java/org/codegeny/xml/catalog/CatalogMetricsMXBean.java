@@ -0,0 +1,46 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CatalogMetrics}. Durations are expressed in nanoseconds.
+ */
+public interface CatalogMetricsMXBean {
+
+	long getCacheHitCount();
+
+	double getCacheHitRate();
+
+	long getCacheMissCount();
+
+	/**
+	 * @return The last load duration for each catalog systemId (up to 1000 catalogs, the ones loaded first).
+	 */
+	Map<String, Long> getCatalogLoadTimes();
+
+	/**
+	 * @return The number of matches for each entry type.
+	 */
+	Map<String, Long> getEntryMatchCounts();
+
+	/**
+	 * @return The number of misses for each entry type.
+	 */
+	Map<String, Long> getEntryMissCounts();
+
+	long getLookupCount();
+
+	/**
+	 * @return The number of lookups for each latency bucket (<code>&lt;1us</code>, <code>&lt;10us</code>, ..., <code>&gt;=10ms</code>).
+	 */
+	Map<String, Long> getLookupLatencyHistogram();
+
+	long getLookupMissCount();
+
+	/**
+	 * @return The last identifiers (up to 100) which were not mapped.
+	 */
+	String[] getRecentMisses();
+
+	void reset();
+}
@@ -2,125 +2,341 @@ package org.codegeny.xml.catalog;
 
 import static java.util.Objects.requireNonNull;
 
-import java.util.stream.IntStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
-import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * This class is responsible for parsing catalogs for a given systemId. 
- * 
+ * This class is responsible for parsing catalogs for a given systemId. Catalogs are streamed through SAX and fed to a {@link CatalogBuilder} as elements
+ * arrive, no DOM is ever built.
+ *
  * @author Xavier Dury
  */
 public class CatalogParser {
-	
+
+	private class AsyncLoader {
+
+		private final Map<String, CompletableFuture<Catalog>> catalogs = new ConcurrentHashMap<>();
+		private final Executor executor;
+
+		public AsyncLoader(Executor executor) {
+			this.executor = executor;
+		}
+
+		/**
+		 * Returns a future which completes once the catalog and all the catalogs it started loading are loaded. Catalogs which are already being loaded
+		 * elsewhere in the graph (possibly by an ancestor) are shared but not waited for, so that cycles cannot dead-lock.
+		 */
+		public CompletableFuture<Catalog> load(String systemId, String base) {
+			return CompletableFuture.supplyAsync(() -> resolve(systemId, base), executor).thenComposeAsync(source -> {
+				CompletableFuture<Catalog> catalog = new CompletableFuture<>();
+				CompletableFuture<Catalog> loading = catalogs.putIfAbsent(source.getSystemId(), catalog);
+				if (loading != null) {
+					return CompletableFuture.completedFuture(placeholder(loading, systemId, base));
+				}
+				List<CompletableFuture<Catalog>> children = new ArrayList<>();
+				try {
+					catalog.complete(catalogCache.resolve(source.getSystemId(), supplier(source, systemId, base, (s, b) -> {
+						CompletableFuture<Catalog> child = load(s, b);
+						children.add(child);
+						return placeholder(child, s, b);
+					})));
+				} catch (RuntimeException runtimeException) {
+					catalog.completeExceptionally(runtimeException);
+					throw runtimeException;
+				}
+				return CompletableFuture.allOf(children.toArray(new CompletableFuture<?>[children.size()])).thenApply(nothing -> catalog.join());
+			}, executor);
+		}
+
+		/**
+		 * Returns a catalog standing for the given future. As the catalog referencing it may already be cached, a failed load is attempted again
+		 * (synchronously) on use, just like lazily loaded catalogs, instead of failing forever with a {@link CompletionException}.
+		 */
+		private Catalog placeholder(CompletableFuture<Catalog> future, String systemId, String base) {
+			return new LazyCatalog(() -> {
+				try {
+					return future.join();
+				} catch (CompletionException completionException) {
+					return parse(systemId, base);
+				}
+			});
+		}
+	}
+
+	private class CatalogHandler extends DefaultHandler {
+
+		private final Deque<CatalogBuilder<?>> builders = new ArrayDeque<>();
+		private Catalog catalog;
+		private final BiFunction<String, String, Catalog> references;
+		private final String systemId;
+
+		public CatalogHandler(String systemId, BiFunction<String, String, Catalog> references) {
+			this.systemId = systemId;
+			this.references = references;
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if (localName.equals("group") || localName.equals("catalog")) {
+				Object result = builders.pop().end();
+				if (builders.isEmpty()) {
+					catalog = (Catalog) result;
+				}
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			assertNamespace(uri, qName);
+			if (builders.isEmpty()) {
+				if (!localName.equals("catalog")) {
+					throw new CatalogException(String.format("Root element must be 'catalog' and not '%s'", qName));
+				}
+				String base = attributes.getValue(XML_NAMESPACE, "base");
+				builders.push(CatalogBuilder.newCatalog(prefer(attributes), base != null ? base : systemId, listener));
+			} else if (localName.equals("group")) {
+				builders.push(builders.peek().addGroup(prefer(attributes), attributes.getValue(XML_NAMESPACE, "base")));
+			} else {
+				element(builders.peek(), localName, qName, attributes, systemId, references);
+			}
+		}
+	}
+
 	public static final String NAMESPACE = "urn:oasis:names:tc:entity:xmlns:xml:catalog";
-	
+
+	private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+	private static SAXParserFactory newSAXParserFactory() {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			// catalogs never need external entities or DTDs
+			factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+			factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		} catch (ParserConfigurationException | SAXException exception) {
+			throw new CatalogException("Could not configure SAX parser factory", exception);
+		}
+		return factory;
+	}
+
+	private static TransformerFactory newTransformerFactory() {
+		TransformerFactory factory = TransformerFactory.newInstance();
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (TransformerException transformerException) {
+			throw new CatalogException("Could not configure transformer factory", transformerException);
+		}
+		return factory;
+	}
+
 	private final CatalogCache catalogCache;
+	private final boolean lazy;
+	private final CatalogListener listener;
+	// looking factories up is expensive so they are created once per parser, they are not thread-safe and are only used under their own lock
+	private final SAXParserFactory saxParserFactory = newSAXParserFactory();
+	private final TransformerFactory transformerFactory = newTransformerFactory();
 	private final URIResolver uriResolver;
-	
+
 	public CatalogParser(URIResolver uriResolver) {
 		this(uriResolver, CatalogCache.NO_CACHE);
 	}
-	
+
 	public CatalogParser(URIResolver uriResolver, CatalogCache catalogCache) {
+		this(uriResolver, catalogCache, false);
+	}
+
+	/**
+	 * @param uriResolver The resolver for catalogs.
+	 * @param catalogCache The cache for catalogs.
+	 * @param lazy If <code>true</code>, catalogs referenced through <code>nextCatalog</code> or <code>delegate*</code> entries are only resolved and
+	 *            parsed when a lookup reaches them.
+	 */
+	public CatalogParser(URIResolver uriResolver, CatalogCache catalogCache, boolean lazy) {
+		this(uriResolver, catalogCache, lazy, null);
+	}
+
+	/**
+	 * @param uriResolver The resolver for catalogs.
+	 * @param catalogCache The cache for catalogs.
+	 * @param lazy If <code>true</code>, catalogs referenced through <code>nextCatalog</code> or <code>delegate*</code> entries are only resolved and
+	 *            parsed when a lookup reaches them.
+	 * @param listener The listener notified of cache, load, entry and lookup events (may be <code>null</code>). Parsed catalogs are returned as
+	 *            {@link InstrumentedCatalog}s.
+	 */
+	public CatalogParser(URIResolver uriResolver, CatalogCache catalogCache, boolean lazy, CatalogListener listener) {
 		this.uriResolver = requireNonNull(uriResolver, "uriResolver cannot be null");
-		this.catalogCache = requireNonNull(catalogCache, "catalogCache cannot be null");
+		requireNonNull(catalogCache, "catalogCache cannot be null");
+		this.catalogCache = listener != null ? new InstrumentedCatalogCache(catalogCache, listener) : catalogCache;
+		this.lazy = lazy;
+		this.listener = listener;
 	}
-	
-	private void assertNamespace(Element element) {
-		if (!element.getNamespaceURI().equals(NAMESPACE)) {
-			throw new CatalogException(String.format("Catalog element '%s' must belong to the '%s' namespace", element.getTagName(), NAMESPACE));
+
+	private void assertNamespace(String namespace, String qName) {
+		if (!NAMESPACE.equals(namespace)) {
+			throw new CatalogException(String.format("Catalog element '%s' must belong to the '%s' namespace", qName, NAMESPACE));
 		}
 	}
-	
-	private String requiredAttribute(Element element, String name) {
-		String value = element.getAttribute(name);
+
+	private SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
+		synchronized (saxParserFactory) {
+			return saxParserFactory.newSAXParser();
+		}
+	}
+
+	private Transformer newTransformer() throws TransformerException {
+		synchronized (transformerFactory) {
+			return transformerFactory.newTransformer();
+		}
+	}
+
+	private Prefer prefer(Attributes attributes) {
+		String prefer = attributes.getValue("prefer");
+		return prefer == null ? null : Prefer.valueOf(prefer.toUpperCase());
+	}
+
+	private String requiredAttribute(Attributes attributes, String qName, String name) {
+		String value = attributes.getValue(name);
 		if (value == null) {
-			throw new CatalogException(String.format("Attribute '%s' of element '%s' cannot be null", name, element.getTagName()));
+			throw new CatalogException(String.format("Attribute '%s' of element '%s' cannot be null", name, qName));
 		}
 		return value;
 	}
-	
-	private <T> CatalogBuilder<T> children(CatalogBuilder<T> builder, Element element, String systemId) {
-		NodeList children = element.getElementsByTagName("*");
-		IntStream.range(0, children.getLength()).mapToObj(i -> (Element) children.item(i)).forEach(e -> element(builder, e, systemId));
-		return builder;
-	}
-	
-	private <T> CatalogBuilder<T> element(CatalogBuilder<T> builder, Element element, String systemId) {
-		assertNamespace(element);
-		switch (element.getTagName()) {
-		case "group":
-			return children(builder.addGroup(Prefer.valueOf(requiredAttribute(element, "prefer").toUpperCase()), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base")), element, systemId).end();
+
+	private void element(CatalogBuilder<?> builder, String localName, String qName, Attributes attributes, String systemId, BiFunction<String, String, Catalog> references) {
+		switch (localName) {
 		case "public":
-			return builder.addPublic(requiredAttribute(element, "publicId"), requiredAttribute(element, "uri"), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base"));
+			builder.addPublic(requiredAttribute(attributes, qName, "publicId"), requiredAttribute(attributes, qName, "uri"), attributes.getValue(XML_NAMESPACE, "base"));
+			break;
 		case "system":
-			return builder.addSystem(requiredAttribute(element, "systemId"), requiredAttribute(element, "uri"), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base"));
+			builder.addSystem(requiredAttribute(attributes, qName, "systemId"), requiredAttribute(attributes, qName, "uri"), attributes.getValue(XML_NAMESPACE, "base"));
+			break;
 		case "rewriteSystem":
-			return builder.addRewriteSystem(requiredAttribute(element, "systemIdStartString"), requiredAttribute(element, "rewritePrefix"));
+			builder.addRewriteSystem(requiredAttribute(attributes, qName, "systemIdStartString"), requiredAttribute(attributes, qName, "rewritePrefix"));
+			break;
 		case "systemSuffix":
-			return builder.addSystemSuffix(requiredAttribute(element, "systemIdSuffix"), requiredAttribute(element, "uri"), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base"));
+			builder.addSystemSuffix(requiredAttribute(attributes, qName, "systemIdSuffix"), requiredAttribute(attributes, qName, "uri"), attributes.getValue(XML_NAMESPACE, "base"));
+			break;
 		case "delegatePublic":
-			return builder.addDelegatePublic(requiredAttribute(element, "publicIdStartString"), parse(requiredAttribute(element, "catalog"), systemId));
+			builder.addDelegatePublic(requiredAttribute(attributes, qName, "publicIdStartString"), references.apply(requiredAttribute(attributes, qName, "catalog"), systemId));
+			break;
 		case "delegateSystem":
-			return builder.addDelegateSystem(requiredAttribute(element, "systemIdStartString"), parse(requiredAttribute(element, "catalog"), systemId));
+			builder.addDelegateSystem(requiredAttribute(attributes, qName, "systemIdStartString"), references.apply(requiredAttribute(attributes, qName, "catalog"), systemId));
+			break;
 		case "uri":
-			return builder.addURI(requiredAttribute(element, "name"), requiredAttribute(element, "uri"), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base"));
+			builder.addURI(requiredAttribute(attributes, qName, "name"), requiredAttribute(attributes, qName, "uri"), attributes.getValue(XML_NAMESPACE, "base"));
+			break;
 		case "rewriteURI":
-			return builder.addRewriteURI(requiredAttribute(element, "uriStartString"), requiredAttribute(element, "rewritePrefix"));
+			builder.addRewriteURI(requiredAttribute(attributes, qName, "uriStartString"), requiredAttribute(attributes, qName, "rewritePrefix"));
+			break;
 		case "uriSuffix":
-			return builder.addURISuffix(requiredAttribute(element, "uriSuffix"), requiredAttribute(element, "uri"), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base"));
+			builder.addURISuffix(requiredAttribute(attributes, qName, "uriSuffix"), requiredAttribute(attributes, qName, "uri"), attributes.getValue(XML_NAMESPACE, "base"));
+			break;
 		case "delegateURI":
-			return builder.addDelegateURI(requiredAttribute(element, "uriStartString"), parse(requiredAttribute(element, "catalog"), systemId));
+			builder.addDelegateURI(requiredAttribute(attributes, qName, "uriStartString"), references.apply(requiredAttribute(attributes, qName, "catalog"), systemId));
+			break;
 		case "nextCatalog":
-			return builder.addNextCatalog(parse(requiredAttribute(element, "catalog"), systemId));
+			builder.addNextCatalog(references.apply(requiredAttribute(attributes, qName, "catalog"), systemId));
+			break;
 		default:
-			throw new CatalogException(String.format("Unknown tag '%s'", element.getTagName()));
+			throw new CatalogException(String.format("Unknown tag '%s'", qName));
 		}
 	}
-	
-	private Catalog parse(Source source) {
+
+	private Catalog parse(Source source, BiFunction<String, String, Catalog> references) {
+		CatalogHandler handler = new CatalogHandler(source.getSystemId(), references);
 		try {
-			DOMResult result = new DOMResult();
-			TransformerFactory.newInstance().newTransformer().transform(source, result);
-			Document document = (Document) result.getNode();
-			return rootElement(document.getDocumentElement(), source.getSystemId());
-		} catch (TransformerException transformerException) {
-			throw new CatalogException(String.format("Could not parse catalog with systemId '%s'", source.getSystemId()), transformerException);
+			InputSource inputSource = SAXSource.sourceToInputSource(source);
+			if (inputSource != null) {
+				newSAXParser().parse(inputSource, handler);
+			} else {
+				newTransformer().transform(source, new SAXResult(handler));
+			}
+		} catch (ParserConfigurationException | SAXException | IOException | TransformerException exception) {
+			throw new CatalogException(String.format("Could not parse catalog with systemId '%s'", source.getSystemId()), exception);
+		}
+		if (handler.catalog == null) {
+			throw new CatalogException(String.format("Could not parse catalog with systemId '%s'", source.getSystemId()));
 		}
+		return handler.catalog;
 	}
-	
+
+	private Catalog instrument(Catalog catalog) {
+		return listener != null ? new InstrumentedCatalog(catalog, listener) : catalog;
+	}
+
+	private Catalog reference(String systemId, String base) {
+		return lazy ? new LazyCatalog(() -> parse(systemId, base)) : parse(systemId, base);
+	}
+
 	public Catalog parse(String systemId) {
-		return parse(requireNonNull(systemId, "systemId cannot be null"), null);
+		return instrument(parse(requireNonNull(systemId, "systemId cannot be null"), null));
 	}
-	
+
 	private Catalog parse(String systemId, String base) {
+		Source source = resolve(systemId, base);
+		return this.catalogCache.resolve(source.getSystemId(), supplier(source, systemId, base, this::reference));
+	}
+
+	/**
+	 * Parses the catalog with the given systemId and all the catalogs it references (through <code>nextCatalog</code> or <code>delegate*</code>
+	 * entries) asynchronously. Sibling catalogs are loaded in parallel and catalogs referenced multiple times are only loaded once.
+	 *
+	 * @param systemId The systemId of the catalog.
+	 * @param executor The executor used to resolve and parse catalogs.
+	 * @return A future which completes once the whole catalog graph is loaded.
+	 */
+	public CompletableFuture<Catalog> parseAsync(String systemId, Executor executor) {
+		return new AsyncLoader(requireNonNull(executor, "executor cannot be null")).load(requireNonNull(systemId, "systemId cannot be null"), null).thenApply(this::instrument);
+	}
+	
+	private Supplier<Catalog> supplier(Source source, String systemId, String base, BiFunction<String, String, Catalog> references) {
+		AtomicReference<Source> resolved = new AtomicReference<>(source);
+		// the first load reuses the resolved source, subsequent (re)loads must resolve it again as sources may only be read once
+		return () -> {
+			Source next = resolved.getAndSet(null);
+			return next != null ? parse(next, references) : parse(resolve(systemId, base), this::reference);
+		};
+	}
+
+	private Source resolve(String systemId, String base) {
 		try {
 			Source source = uriResolver.resolve(systemId, base);
 			if (source == null) {
 				throw new CatalogException(String.format("Could not resolve catalog with systemId '%s' and base '%s'", systemId, base));
 			}
-			return this.catalogCache.resolve(source.getSystemId(), () -> parse(source));
+			return source;
 		} catch (TransformerException transformerException) {
 			throw new CatalogException(String.format("Could not resolve catalog with systemId '%s' and base '%s'", systemId, base), transformerException);
 		}
 	}
-		
-	private Catalog rootElement(Element element, String systemId) {
-		assertNamespace(element);
-		switch (element.getTagName()) {
-		case "catalog":
-			return children(CatalogBuilder.newCatalog(Prefer.valueOf(requiredAttribute(element, "prefer").toUpperCase()), element.getAttributeNS("http://www.w3.org/XML/1998/namespace", "base")), element, systemId).end();
-		default:
-			throw new CatalogException(String.format("Root element must be 'catalog' and not '%s'", element.getTagName()));
-		}
-	}
 }
@@ -0,0 +1,250 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Catalog which answers lookups straight from a buffer written by {@link CatalogCompiler}, usually a memory-mapped file. Opening a compiled catalog only
+ * reads its header; no XML is parsed and no entry is materialized.
+ *
+ * The buffer is only accessed through absolute reads, so a compiled catalog can be used concurrently by multiple threads. Just like catalogs built by
+ * {@link CatalogBuilder}, each compiled catalog is evaluated at most once per resolution.
+ */
+public class CompiledCatalog implements Catalog {
+
+	// File layout (big-endian, all offsets are absolute):
+	// header: magic, version, catalog count, catalog table offset
+	// catalog: external identifier phase count, phase offsets, URI phase count, phase offsets
+	// phase: kind, keyed by publicId, then either a catalog index (next catalog) or [key length count, key lengths (descending)] (prefix or suffix only),
+	// hash table mask, slots (group offset or -1)
+	// group: hash, key, entry count, entries (action, requires null systemId, string or catalog index)
+	// string: length << 1 | wide, then either one byte per char (latin-1) or two (wide)
+	static final int MAGIC = 0x43544C47;
+	static final int VERSION = 2;
+
+	static final byte EXACT = 0;
+	static final byte PREFIX = 1;
+	static final byte SUFFIX = 2;
+	static final byte NEXT_CATALOG = 3;
+
+	static final byte RESULT = 0;
+	static final byte REWRITE = 1;
+	static final byte DELEGATE = 2;
+
+	static int hash(String key, int length, boolean reversed) {
+		int hash = 0;
+		for (int i = 0, last = key.length() - 1; i < length; i++) {
+			hash = 31 * hash + key.charAt(reversed ? last - i : i);
+		}
+		return hash;
+	}
+
+	static int mix(int hash) {
+		return hash ^ hash >>> 16;
+	}
+
+	/**
+	 * Maps the given compiled catalog file into memory.
+	 *
+	 * @param path The compiled catalog file.
+	 * @return The compiled catalog.
+	 * @throws IOException If the file cannot be mapped.
+	 * @throws CatalogException If the file is not a compiled catalog.
+	 */
+	public static CompiledCatalog open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new CompiledCatalog(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Compiles the given catalog graph into a compact in-memory catalog. Each entry then only costs a few dozen bytes on top of its (deduplicated) key and
+	 * target, stored on one byte per character when possible, which makes this representation suitable for catalogs with millions of entries.
+	 *
+	 * @param catalog The root catalog.
+	 * @param offHeap If <code>true</code>, the compiled catalog is stored in a direct buffer, outside of the heap.
+	 * @return The compiled catalog.
+	 * @throws CatalogException If the graph contains a catalog which cannot be compiled.
+	 */
+	public static CompiledCatalog compact(Catalog catalog, boolean offHeap) {
+		ByteBuffer buffer = CatalogCompiler.compile(catalog);
+		if (offHeap) {
+			// absolute reads do not depend on the position, so the buffer does not need to be flipped
+			buffer = ByteBuffer.allocateDirect(buffer.capacity()).put(buffer);
+		}
+		return new CompiledCatalog(buffer);
+	}
+
+	private final ByteBuffer buffer;
+	private final int[] catalogs;
+	// identities of the compiled catalogs for Traversal
+	private final Object[] nodes;
+
+	/**
+	 * @param buffer The buffer containing the compiled catalog (must not be modified afterwards).
+	 * @throws CatalogException If the buffer does not contain a compiled catalog.
+	 */
+	public CompiledCatalog(ByteBuffer buffer) {
+		this.buffer = requireNonNull(buffer, "buffer cannot be null");
+		if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC) {
+			throw new CatalogException("Not a compiled catalog");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new CatalogException(String.format("Unsupported compiled catalog version %d", buffer.getInt(4)));
+		}
+		this.catalogs = new int[buffer.getInt(8)];
+		this.nodes = new Object[catalogs.length];
+		for (int i = 0, table = buffer.getInt(12); i < catalogs.length; i++) {
+			catalogs[i] = buffer.getInt(table + 4 * i);
+			nodes[i] = new Object();
+		}
+	}
+
+	private int find(int table, String key, int hash, int length, boolean suffix) {
+		int mask = buffer.getInt(table);
+		for (int slot = mix(hash) & mask;; slot = slot + 1 & mask) {
+			int group = buffer.getInt(table + 4 + 4 * slot);
+			if (group < 0) {
+				return -1;
+			}
+			if (buffer.getInt(group) == hash && matches(buffer.getInt(group + 4), key, length, suffix)) {
+				return group;
+			}
+		}
+	}
+
+	private String lookup(int group, String key, String publicId, String systemId, boolean externalIdentifier) {
+		for (int i = 0, count = buffer.getInt(group + 8), entry = group + 12; i < count; i++, entry += 6) {
+			if (buffer.get(entry + 1) != 0 && systemId != null) {
+				continue;
+			}
+			int operand = buffer.getInt(entry + 2);
+			switch (buffer.get(entry)) {
+			case RESULT:
+				return string(operand);
+			case REWRITE:
+				return string(operand).concat(key.substring(buffer.getInt(buffer.getInt(group + 4)) >>> 1));
+			default:
+				String result = externalIdentifier ? lookupExternalIdentifier(operand, publicId, systemId) : lookupURI(operand, systemId);
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+		return null;
+	}
+
+	private String lookupExternalIdentifier(int catalog, String publicId, String systemId) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(nodes[catalog])) {
+				int offset = catalogs[catalog];
+				for (int i = 0, count = buffer.getInt(offset); i < count; i++) {
+					String result = lookupPhase(buffer.getInt(offset + 4 + 4 * i), publicId, systemId, true);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		return lookupExternalIdentifier(0, publicId, systemId);
+	}
+
+	private String lookupPhase(int phase, String publicId, String systemId, boolean externalIdentifier) {
+		byte kind = buffer.get(phase);
+		if (kind == NEXT_CATALOG) {
+			int catalog = buffer.getInt(phase + 2);
+			return externalIdentifier ? lookupExternalIdentifier(catalog, publicId, systemId) : lookupURI(catalog, systemId);
+		}
+		String key = buffer.get(phase + 1) != 0 ? publicId : systemId;
+		if (key == null) {
+			return null;
+		}
+		if (kind == EXACT) {
+			int group = find(phase + 2, key, key.hashCode(), key.length(), false);
+			return group < 0 ? null : lookup(group, key, publicId, systemId, externalIdentifier);
+		}
+		int lengths = buffer.getInt(phase + 2);
+		int table = phase + 6 + 4 * lengths;
+		for (int i = 0; i < lengths; i++) {
+			int length = buffer.getInt(phase + 6 + 4 * i);
+			if (length <= key.length()) {
+				int group = find(table, key, hash(key, length, kind == SUFFIX), length, kind == SUFFIX);
+				if (group >= 0) {
+					String result = lookup(group, key, publicId, systemId, externalIdentifier);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private String lookupURI(int catalog, String uri) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(nodes[catalog])) {
+				int offset = catalogs[catalog];
+				offset += 4 + 4 * buffer.getInt(offset);
+				for (int i = 0, count = buffer.getInt(offset); i < count; i++) {
+					String result = lookupPhase(buffer.getInt(offset + 4 + 4 * i), null, uri, false);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		return lookupURI(0, uri);
+	}
+
+	private char charAt(int string, boolean wide, int index) {
+		return wide ? buffer.getChar(string + 4 + 2 * index) : (char) (buffer.get(string + 4 + index) & 0xFF);
+	}
+
+	private boolean matches(int string, String key, int length, boolean suffix) {
+		int header = buffer.getInt(string);
+		if (header >>> 1 != length) {
+			return false;
+		}
+		boolean wide = (header & 1) != 0;
+		for (int i = 0, start = suffix ? key.length() - length : 0; i < length; i++) {
+			if (charAt(string, wide, i) != key.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String string(int offset) {
+		int header = buffer.getInt(offset);
+		boolean wide = (header & 1) != 0;
+		char[] chars = new char[header >>> 1];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = charAt(offset, wide, i);
+		}
+		return new String(chars);
+	}
+}
@@ -1,9 +1,8 @@
 package org.codegeny.xml.catalog;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.List;
 
 /**
  * Composite pattern for catalog. Allows multiple catalogs to be used as one. 
@@ -12,21 +11,78 @@ import java.util.stream.Stream;
  */
 public class CompositeCatalog implements Catalog {
 	
-	private final Collection<Catalog> catalogs = new LinkedList<>();
+	private final Catalog[] catalogs;
 
 	public CompositeCatalog(Collection<? extends Catalog> catalogs) {
-		this.catalogs.addAll(catalogs);
+		this.catalogs = catalogs.toArray(new Catalog[catalogs.size()]);
+	}
+	
+	/**
+	 * Merges this composite and the catalogs it statically knows (nested composites, builder catalogs and their <code>nextCatalog</code>s) into a single
+	 * indexed catalog which gives exactly the same results. Other catalogs (lazy, reloading, memoizing, ...) must stay dynamic and are still delegated to.
+	 * 
+	 * @return The flattened catalog.
+	 */
+	public Catalog flatten() {
+		return new FlatCatalog(this);
+	}
+	
+	List<Catalog> getCatalogs() {
+		return Arrays.asList(catalogs);
 	}
 
-	public Optional<String> mapURI(String uri) {
-		return catalogs.stream().flatMap(c -> stream(c.mapURI(uri))).findFirst();
+	@Override
+	public String[] lookupExternalIdentifiers(ExternalIdentifier[] externalIdentifiers) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(true);
+		try {
+			return Batches.distinct(externalIdentifiers, Batches.EXTERNAL_IDENTIFIER_ORDER, unique -> Batches.cascade(unique, catalogs, Catalog::lookupExternalIdentifiers));
+		} finally {
+			traversal.exit(opened);
+		}
 	}
 
-	public Optional<String> mapExternalIdentifier(String publicId, String systemId) {
-		return catalogs.stream().flatMap(c -> stream(c.mapExternalIdentifier(publicId, systemId))).findFirst();
+	@Override
+	public String[] lookupURIs(String[] uris) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(true);
+		try {
+			return Batches.distinct(uris, Batches.URI_ORDER, unique -> Batches.cascade(unique, catalogs, Catalog::lookupURIs));
+		} finally {
+			traversal.exit(opened);
+		}
 	}
-	
-	private <T> Stream<T> stream(Optional<T> optional) {
-		return optional.map(Stream::of).orElseGet(Stream::empty);
+
+	// all catalogs are looked up in the same resolution so that the catalogs they share are only evaluated once
+	public String lookupURI(String uri) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			for (Catalog catalog : catalogs) {
+				String result = catalog.lookupURI(uri);
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			for (Catalog catalog : catalogs) {
+				String result = catalog.lookupExternalIdentifier(publicId, systemId);
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
 	}
 }
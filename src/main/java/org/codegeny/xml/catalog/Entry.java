@@ -0,0 +1,136 @@
+package org.codegeny.xml.catalog;
+
+import java.net.URI;
+
+/**
+ * Single catalog entry as declared through {@link CatalogBuilder}. Entries are compiled into indexed mappers by {@link CatalogImpl}.
+ */
+final class Entry {
+
+	public static Entry delegate(EntryType type, String startString, Prefer prefer, Catalog catalog) {
+		return new Entry(type, intern(startString), null, prefer, catalog);
+	}
+
+	// keys and targets are shared by many entries (and catalogs), intern them once at build time
+	private static String intern(String string) {
+		return string != null ? string.intern() : null;
+	}
+
+	public static Entry nextCatalog(Catalog catalog) {
+		return new Entry(EntryType.NEXT_CATALOG, null, null, null, catalog);
+	}
+
+	private static String rebase(String uri, String base) {
+		if (URI.create(uri).isAbsolute()) {
+			return uri;
+		}
+		if (base == null) {
+			throw new CatalogException("No 'base' attribute was specified but was needed to resolve a non-absolute URI");
+		}
+		return URI.create(base).resolve(uri).toASCIIString();
+	}
+
+	public static Entry rewrite(EntryType type, String startString, String rewritePrefix) {
+		return new Entry(type, intern(startString), intern(rewritePrefix), null, null);
+	}
+
+	/**
+	 * Creates an entry mapping to the given URI which is resolved against the given base right away so that lookups only return a precomputed string.
+	 * 
+	 * @throws CatalogException If the URI is relative and there is no base.
+	 */
+	public static Entry target(EntryType type, String key, String uri, String base, Prefer prefer) {
+		return new Entry(type, intern(key), intern(rebase(uri, base)), prefer, null);
+	}
+
+	private final Catalog catalog;
+	private final String key;
+	private final Prefer prefer;
+	private final String target;
+	private final EntryType type;
+
+	private Entry(EntryType type, String key, String target, Prefer prefer, Catalog catalog) {
+		this.type = type;
+		this.key = key;
+		this.target = target;
+		this.prefer = prefer;
+		this.catalog = catalog;
+	}
+
+	public ExternalIdentifierMapper externalIdentifierMapper() {
+		switch (type) {
+		case SYSTEM:
+		case SYSTEM_SUFFIX:
+			return (ExternalIdentifierLookup) (p, s) -> target;
+		case PUBLIC:
+			return prefer.wrap((ExternalIdentifierLookup) (p, s) -> target);
+		case REWRITE_SYSTEM:
+			return (ExternalIdentifierLookup) (p, s) -> rewrite(s);
+		case DELEGATE_PUBLIC:
+			return prefer.wrap(catalog);
+		case DELEGATE_SYSTEM:
+		case NEXT_CATALOG:
+			return catalog;
+		default:
+			throw new IllegalStateException(type.name());
+		}
+	}
+
+	/**
+	 * @return The delegate or next catalog (<code>null</code> for other entry types).
+	 */
+	public Catalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * @return The key (systemId, publicId, URI name, start string or suffix) or <code>null</code> for <code>nextCatalog</code> entries.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return The effective prefer value for <code>public</code> and <code>delegatePublic</code> entries.
+	 */
+	public Prefer getPrefer() {
+		return prefer;
+	}
+
+	/**
+	 * @return The (absolute) target URI or rewrite prefix (<code>null</code> for delegates and next catalogs).
+	 */
+	public String getTarget() {
+		return target;
+	}
+
+	public EntryType getType() {
+		return type;
+	}
+
+	private String rewrite(String identifier) {
+		return target.concat(identifier.substring(key.length()));
+	}
+
+	/**
+	 * @return The length of the key for prefix or suffix entries, 0 otherwise. Longer keys have precedence.
+	 */
+	public int size() {
+		return type.getMatching() == EntryType.Matching.PREFIX || type.getMatching() == EntryType.Matching.SUFFIX ? key.length() : 0;
+	}
+
+	public URIMapper uriMapper() {
+		switch (type) {
+		case URI:
+		case URI_SUFFIX:
+			return (URILookup) u -> target;
+		case REWRITE_URI:
+			return (URILookup) this::rewrite;
+		case DELEGATE_URI:
+		case NEXT_CATALOG:
+			return catalog;
+		default:
+			throw new IllegalStateException(type.name());
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.codegeny.xml.catalog;
+
+/**
+ * Catalog entry types along with their resolution priority (lower comes first, 0 if not applicable) for external identifiers and URIs.
+ * 
+ * @see CatalogListener
+ */
+public enum EntryType {
+	
+	SYSTEM(1, 0, Matching.EXACT, false),
+	REWRITE_SYSTEM(2, 0, Matching.PREFIX, false),
+	SYSTEM_SUFFIX(3, 0, Matching.SUFFIX, false),
+	DELEGATE_SYSTEM(4, 0, Matching.PREFIX, false),
+	PUBLIC(6, 0, Matching.EXACT, true),
+	DELEGATE_PUBLIC(6, 0, Matching.PREFIX, true),
+	URI(0, 1, Matching.EXACT, false),
+	REWRITE_URI(0, 2, Matching.PREFIX, false),
+	URI_SUFFIX(0, 3, Matching.SUFFIX, false),
+	DELEGATE_URI(0, 4, Matching.PREFIX, false),
+	NEXT_CATALOG(7, 5, null, false);
+	
+	enum Matching {
+		
+		EXACT, PREFIX, SUFFIX
+	}
+	
+	private final int externalIdentifierPriority;
+	private final boolean keyedByPublicId;
+	private final Matching matching;
+	private final int uriPriority;
+	
+	private EntryType(int externalIdentifierPriority, int uriPriority, Matching matching, boolean keyedByPublicId) {
+		this.externalIdentifierPriority = externalIdentifierPriority;
+		this.uriPriority = uriPriority;
+		this.matching = matching;
+		this.keyedByPublicId = keyedByPublicId;
+	}
+	
+	int getExternalIdentifierPriority() {
+		return externalIdentifierPriority;
+	}
+	
+	/**
+	 * @return The matching strategy for this entry's key or <code>null</code> if this entry has no key.
+	 */
+	Matching getMatching() {
+		return matching;
+	}
+	
+	int getURIPriority() {
+		return uriPriority;
+	}
+	
+	/**
+	 * @return <code>true</code> if this entry is matched against the publicId, <code>false</code> if it is matched against the systemId (or URI).
+	 */
+	boolean isKeyedByPublicId() {
+		return keyedByPublicId;
+	}
+}
@@ -0,0 +1,49 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Objects;
+
+/**
+ * Pair of publicId and systemId, used for batch lookups.
+ * @see ExternalIdentifierMapper#lookupExternalIdentifiers(ExternalIdentifier[])
+ */
+public final class ExternalIdentifier {
+	
+	private final String publicId;
+	private final String systemId;
+	
+	/**
+	 * @param publicId The publicId (may be <code>null</code>).
+	 * @param systemId The systemId (may be <code>null</code>).
+	 */
+	public ExternalIdentifier(String publicId, String systemId) {
+		this.publicId = publicId;
+		this.systemId = systemId;
+	}
+	
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof ExternalIdentifier)) {
+			return false;
+		}
+		ExternalIdentifier that = (ExternalIdentifier) object;
+		return Objects.equals(this.publicId, that.publicId) && Objects.equals(this.systemId, that.systemId);
+	}
+	
+	public String getPublicId() {
+		return publicId;
+	}
+	
+	public String getSystemId() {
+		return systemId;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * Objects.hashCode(publicId) + Objects.hashCode(systemId);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("[%s, %s]", publicId, systemId);
+	}
+}
@@ -0,0 +1,18 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Optional;
+
+/**
+ * {@link ExternalIdentifierMapper} implemented by its allocation-free {@link #lookupExternalIdentifier(String, String)} method, for internal lambdas.
+ */
+@FunctionalInterface
+interface ExternalIdentifierLookup extends ExternalIdentifierMapper {
+
+	@Override
+	String lookupExternalIdentifier(String publicId, String systemId);
+
+	@Override
+	default Optional<String> mapExternalIdentifier(String publicId, String systemId) {
+		return Optional.ofNullable(lookupExternalIdentifier(publicId, systemId));
+	}
+}
@@ -1,5 +1,7 @@
 package org.codegeny.xml.catalog;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.w3c.dom.ls.LSResourceResolver;
@@ -9,11 +11,55 @@ import org.w3c.dom.ls.LSResourceResolver;
  * 
  * @author Xavier Dury
  */
+@FunctionalInterface
 public interface ExternalIdentifierMapper {
 	
 	default LSResourceResolver decorate(LSResourceResolver lsResourceResolver) {
-		return (type, namespaceURI, publicId, systemId, baseURI) -> lsResourceResolver.resolveResource(type, namespaceURI, publicId, mapExternalIdentifier(publicId, systemId).orElse(systemId), baseURI);
+		return (type, namespaceURI, publicId, systemId, baseURI) -> {
+			String mapped = lookupExternalIdentifier(publicId, systemId);
+			return lsResourceResolver.resolveResource(type, namespaceURI, publicId, mapped != null ? mapped : systemId, baseURI);
+		};
+	}
+	
+	/**
+	 * Low-level lookup which does not allocate any intermediate object. The default implementation delegates to
+	 * {@link #mapExternalIdentifier(String, String)}; implementations which care about allocations should override this method and implement
+	 * {@link #mapExternalIdentifier(String, String)} on top of it.
+	 * 
+	 * @param publicId The publicId (may be <code>null</code>).
+	 * @param systemId The systemId (may be <code>null</code>).
+	 * @return The mapped URI or <code>null</code> if there is no mapping.
+	 */
+	default String lookupExternalIdentifier(String publicId, String systemId) {
+		return mapExternalIdentifier(publicId, systemId).orElse(null);
+	}
+	
+	/**
+	 * Batch version of {@link #lookupExternalIdentifier(String, String)}. Implementations may group or reorder lookups internally.
+	 * 
+	 * @param externalIdentifiers The external identifiers (elements cannot be <code>null</code>).
+	 * @return The mapped URIs (or <code>null</code> where there is no mapping), in the same order as the given external identifiers.
+	 */
+	default String[] lookupExternalIdentifiers(ExternalIdentifier[] externalIdentifiers) {
+		String[] results = new String[externalIdentifiers.length];
+		for (int i = 0; i < externalIdentifiers.length; i++) {
+			results[i] = lookupExternalIdentifier(externalIdentifiers[i].getPublicId(), externalIdentifiers[i].getSystemId());
+		}
+		return results;
+	}
+	
+	/**
+	 * @param externalIdentifiers The external identifiers (elements cannot be <code>null</code>).
+	 * @param parallel If <code>true</code>, large batches are split and looked up in parallel in the common fork-join pool.
+	 * @return The mapped URIs (or <code>null</code> where there is no mapping), in the same order as the given external identifiers.
+	 */
+	default String[] lookupExternalIdentifiers(ExternalIdentifier[] externalIdentifiers, boolean parallel) {
+		return parallel ? Batches.parallel(externalIdentifiers, this::lookupExternalIdentifiers) : lookupExternalIdentifiers(externalIdentifiers);
 	}
 	
 	Optional<String> mapExternalIdentifier(String publicId, String systemId);
+	
+	default List<Optional<String>> mapExternalIdentifiers(Collection<ExternalIdentifier> externalIdentifiers) {
+		return Batches.optionals(lookupExternalIdentifiers(externalIdentifiers.toArray(new ExternalIdentifier[externalIdentifiers.size()])));
+	}
 }
@@ -0,0 +1,225 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codegeny.xml.catalog.EntryType.Matching;
+
+/**
+ * Catalog produced by {@link CompositeCatalog#flatten()}. The indexes of all statically known catalogs (composites, builder catalogs and the catalogs
+ * they reach through <code>nextCatalog</code> entries) are laid out in resolution order and numbered; exact entries of all those indexes are merged into
+ * a single hash map per key kind, each key pointing to the positions where it appears. A lookup then only needs one hash probe per key kind to find all
+ * exact candidates and merges them with the remaining (prefix, suffix or dynamic) mappers by position, which gives the same first match as walking the
+ * original graph.
+ */
+class FlatCatalog implements Catalog {
+
+	/**
+	 * Walks a catalog graph and lays out its mappers for one kind of lookup.
+	 */
+	private static abstract class Layout<M> {
+
+		final Sequence<M> dynamic = new Sequence<>();
+		final Map<String, Sequence<M>> byPublicId = new HashMap<>();
+		final Map<String, Sequence<M>> bySystemId = new HashMap<>();
+		// a catalog reached again can only give the same result as the first time (or recurse forever), it is only laid out once
+		private final Set<Catalog> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		private int position;
+
+		abstract M catalog(Catalog catalog);
+
+		abstract M group(List<M> candidates);
+
+		abstract M index(List<Entry> run, CatalogListener listener);
+
+		abstract M mapper(Entry entry);
+
+		abstract int priority(EntryType type);
+
+		Layout<M> add(Catalog catalog) {
+			if (!visited.add(catalog)) {
+				return this;
+			}
+			if (catalog instanceof CompositeCatalog) {
+				((CompositeCatalog) catalog).getCatalogs().forEach(this::add);
+			} else if (catalog instanceof CatalogImpl) {
+				CatalogListener listener = ((CatalogImpl) catalog).getListener();
+				for (List<Entry> run : CatalogImpl.runs(((CatalogImpl) catalog).getEntries(), this::priority)) {
+					EntryType type = run.get(0).getType();
+					// instrumented indexes must stay on their own to keep reporting matches and misses
+					if (listener != null) {
+						dynamic.add(position++, index(run, listener));
+					} else if (type == EntryType.NEXT_CATALOG) {
+						add(run.get(0).getCatalog());
+					} else if (type.getMatching() == Matching.EXACT) {
+						int index = position++;
+						Map<String, Sequence<M>> sequences = type.isKeyedByPublicId() ? byPublicId : bySystemId;
+						CatalogImpl.map(run, this::mapper).forEach((key, candidates) -> sequences.computeIfAbsent(key, k -> new Sequence<>()).add(index, group(candidates)));
+					} else {
+						dynamic.add(position++, index(run, null));
+					}
+				}
+			} else {
+				dynamic.add(position++, catalog(catalog));
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Mappers along with their positions, in increasing order of position.
+	 */
+	private static final class Sequence<M> {
+
+		private Object[] mappers = new Object[1];
+		private int[] positions = new int[1];
+		private int size;
+
+		public void add(int position, M mapper) {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+				mappers = Arrays.copyOf(mappers, size * 2);
+			}
+			positions[size] = position;
+			mappers[size++] = mapper;
+		}
+
+		@SuppressWarnings("unchecked")
+		public M get(int index) {
+			return (M) mappers[index];
+		}
+
+		public int position(int index) {
+			return index < size ? positions[index] : Integer.MAX_VALUE;
+		}
+	}
+
+	private static final Sequence<?> EMPTY = new Sequence<>();
+
+	@SuppressWarnings("unchecked")
+	private static <M> Sequence<M> sequence(Map<String, Sequence<M>> sequences, String key) {
+		Sequence<M> sequence = key == null ? null : sequences.get(key);
+		return sequence != null ? sequence : (Sequence<M>) EMPTY;
+	}
+
+	private final Catalog catalog;
+	private final Layout<ExternalIdentifierMapper> externalIdentifiers;
+	private final Layout<URIMapper> uris;
+
+	public FlatCatalog(Catalog catalog) {
+		this.catalog = catalog;
+		this.externalIdentifiers = new Layout<ExternalIdentifierMapper>() {
+
+			@Override
+			ExternalIdentifierMapper catalog(Catalog catalog) {
+				return catalog;
+			}
+
+			@Override
+			ExternalIdentifierMapper group(List<ExternalIdentifierMapper> candidates) {
+				return (ExternalIdentifierLookup) (p, s) -> CatalogImpl.lookupExternalIdentifier(candidates, p, s);
+			}
+
+			@Override
+			ExternalIdentifierMapper index(List<Entry> run, CatalogListener listener) {
+				return CatalogImpl.instrument(CatalogImpl.externalIdentifierIndex(run), run.get(0).getType(), listener);
+			}
+
+			@Override
+			ExternalIdentifierMapper mapper(Entry entry) {
+				return entry.externalIdentifierMapper();
+			}
+
+			@Override
+			int priority(EntryType type) {
+				return type.getExternalIdentifierPriority();
+			}
+		}.add(catalog);
+		this.uris = new Layout<URIMapper>() {
+
+			@Override
+			URIMapper catalog(Catalog catalog) {
+				return catalog;
+			}
+
+			@Override
+			URIMapper group(List<URIMapper> candidates) {
+				return (URILookup) u -> CatalogImpl.lookupURI(candidates, u);
+			}
+
+			@Override
+			URIMapper index(List<Entry> run, CatalogListener listener) {
+				return CatalogImpl.instrument(CatalogImpl.uriIndex(run), run.get(0).getType(), listener);
+			}
+
+			@Override
+			URIMapper mapper(Entry entry) {
+				return entry.uriMapper();
+			}
+
+			@Override
+			int priority(EntryType type) {
+				return type.getURIPriority();
+			}
+		}.add(catalog);
+	}
+
+	/**
+	 * @return The catalog which was flattened.
+	 */
+	public Catalog getCatalog() {
+		return catalog;
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		Sequence<ExternalIdentifierMapper> dynamic = externalIdentifiers.dynamic;
+		Sequence<ExternalIdentifierMapper> byPublicId = sequence(externalIdentifiers.byPublicId, publicId);
+		Sequence<ExternalIdentifierMapper> bySystemId = sequence(externalIdentifiers.bySystemId, systemId);
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			for (int i = 0, j = 0, k = 0;;) {
+				int position = Math.min(dynamic.position(i), Math.min(byPublicId.position(j), bySystemId.position(k)));
+				if (position == Integer.MAX_VALUE) {
+					return null;
+				}
+				ExternalIdentifierMapper mapper = position == dynamic.position(i) ? dynamic.get(i++) : position == byPublicId.position(j) ? byPublicId.get(j++) : bySystemId.get(k++);
+				String result = mapper.lookupExternalIdentifier(publicId, systemId);
+				if (result != null) {
+					return result;
+				}
+			}
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		Sequence<URIMapper> dynamic = uris.dynamic;
+		Sequence<URIMapper> bySystemId = sequence(uris.bySystemId, uri);
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			for (int i = 0, k = 0;;) {
+				int position = Math.min(dynamic.position(i), bySystemId.position(k));
+				if (position == Integer.MAX_VALUE) {
+					return null;
+				}
+				URIMapper mapper = position == dynamic.position(i) ? dynamic.get(i++) : bySystemId.get(k++);
+				String result = mapper.lookupURI(uri);
+				if (result != null) {
+					return result;
+				}
+			}
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Catalog decorator which reports lookups (including their result and duration) to a {@link CatalogListener}. Lookups which are not mapped usually fall
+ * through to the network, so this is the place to detect misconfigured catalogs.
+ */
+public class InstrumentedCatalog implements Catalog {
+
+	private final Catalog catalog;
+	private final CatalogListener listener;
+
+	public InstrumentedCatalog(Catalog catalog, CatalogListener listener) {
+		this.catalog = requireNonNull(catalog, "catalog cannot be null");
+		this.listener = requireNonNull(listener, "listener cannot be null");
+	}
+
+	Catalog getCatalog() {
+		return catalog;
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		long start = System.nanoTime();
+		String result = catalog.lookupExternalIdentifier(publicId, systemId);
+		listener.externalIdentifierLookedUp(publicId, systemId, result, System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		long start = System.nanoTime();
+		String result = catalog.lookupURI(uri);
+		listener.uriLookedUp(uri, result, System.nanoTime() - start);
+		return result;
+	}
+}
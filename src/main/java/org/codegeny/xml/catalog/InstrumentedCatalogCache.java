@@ -0,0 +1,36 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Supplier;
+
+/**
+ * Catalog cache decorator which reports cache hits, misses and load times to a {@link CatalogListener}.
+ */
+public class InstrumentedCatalogCache implements CatalogCache {
+
+	private final CatalogCache cache;
+	private final CatalogListener listener;
+
+	public InstrumentedCatalogCache(CatalogCache cache, CatalogListener listener) {
+		this.cache = requireNonNull(cache, "cache cannot be null");
+		this.listener = requireNonNull(listener, "listener cannot be null");
+	}
+
+	@Override
+	public Catalog resolve(String systemId, Supplier<Catalog> supplier) {
+		boolean[] loaded = new boolean[1];
+		Catalog catalog = cache.resolve(systemId, () -> {
+			loaded[0] = true;
+			listener.cacheMiss(systemId);
+			long start = System.nanoTime();
+			Catalog result = supplier.get();
+			listener.catalogLoaded(systemId, System.nanoTime() - start);
+			return result;
+		});
+		if (!loaded[0]) {
+			listener.cacheHit(systemId);
+		}
+		return catalog;
+	}
+}
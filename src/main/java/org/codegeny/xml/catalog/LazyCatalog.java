@@ -0,0 +1,48 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.Supplier;
+
+/**
+ * Catalog which is only loaded when first used. Initialization happens exactly once even if multiple threads use this catalog concurrently; if loading
+ * fails, the exception is propagated and loading will be attempted again on next use.
+ */
+class LazyCatalog implements Catalog {
+	
+	private volatile Catalog catalog;
+	private Supplier<Catalog> supplier;
+	
+	public LazyCatalog(Supplier<Catalog> supplier) {
+		this.supplier = requireNonNull(supplier, "supplier cannot be null");
+	}
+	
+	public Catalog get() {
+		Catalog result = catalog;
+		if (result == null) {
+			synchronized (this) {
+				result = catalog;
+				if (result == null) {
+					// loading may perform lookups of its own which must not be mistaken for the one (if any) reaching this catalog
+					catalog = result = requireNonNull(Traversal.isolated(supplier), "supplier cannot return null");
+					supplier = null;
+				}
+			}
+		}
+		return result;
+	}
+	
+	public boolean isLoaded() {
+		return catalog != null;
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		return get().lookupExternalIdentifier(publicId, systemId);
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		return get().lookupURI(uri);
+	}
+}
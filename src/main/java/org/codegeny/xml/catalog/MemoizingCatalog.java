@@ -0,0 +1,148 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Catalog decorator which memoizes lookup results, including misses. Repeated lookups only cost a hash probe instead of a walk through the whole catalog
+ * graph. The number of memoized results is bounded; when the bound is reached, arbitrary results are evicted.
+ *
+ * Results must be {@link #invalidateAll() invalidated} whenever the decorated catalog changes. Results of lookups which were running while the catalog was
+ * invalidated are not memoized.
+ *
+ * Memoized results are only used for (and computed by) lookups starting at this catalog. When it is reached from an enclosing resolution (through
+ * <code>nextCatalog</code> or <code>delegate*</code> entries), the catalogs already evaluated by that resolution are skipped, so lookups are simply
+ * delegated as their result depends on the path which led to this catalog.
+ */
+public class MemoizingCatalog implements Catalog {
+
+	private static final class ExternalIdentifierKey {
+
+		private final String publicId;
+		private final String systemId;
+
+		public ExternalIdentifierKey(String publicId, String systemId) {
+			this.publicId = publicId;
+			this.systemId = systemId;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof ExternalIdentifierKey)) {
+				return false;
+			}
+			ExternalIdentifierKey that = (ExternalIdentifierKey) object;
+			return Objects.equals(this.publicId, that.publicId) && Objects.equals(this.systemId, that.systemId);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Objects.hashCode(publicId) + Objects.hashCode(systemId);
+		}
+	}
+
+	// sentinel for memoized misses, compared by identity
+	private static final String MISS = new String();
+
+	private final Catalog catalog;
+	private final LongAdder evictionCount = new LongAdder();
+	private final ConcurrentMap<ExternalIdentifierKey, String> externalIdentifiers = new ConcurrentHashMap<>();
+	// incremented by each invalidation so that lookups started before it do not memoize stale results
+	private final AtomicLong generation = new AtomicLong();
+	private final LongAdder hitCount = new LongAdder();
+	private final int maximumSize;
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder totalLoadTime = new LongAdder();
+	private final ConcurrentMap<String, String> uris = new ConcurrentHashMap<>();
+
+	/**
+	 * @param catalog The decorated catalog.
+	 * @param maximumSize The maximum number of memoized results (per lookup type), must be positive.
+	 */
+	public MemoizingCatalog(Catalog catalog, int maximumSize) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		this.catalog = requireNonNull(catalog, "catalog cannot be null");
+		this.maximumSize = maximumSize;
+	}
+
+	private <K> void evict(ConcurrentMap<K, String> map) {
+		for (Iterator<K> iterator = map.keySet().iterator(); map.size() >= maximumSize && iterator.hasNext();) {
+			iterator.next();
+			iterator.remove();
+			evictionCount.increment();
+		}
+	}
+
+	private <K> void memoize(ConcurrentMap<K, String> map, K key, String result, long observed) {
+		if (generation.get() == observed) {
+			evict(map);
+			String value = result != null ? result : MISS;
+			map.put(key, value);
+			// an invalidation may have cleared the map between the check and the put
+			if (generation.get() != observed) {
+				map.remove(key, value);
+			}
+		}
+	}
+
+	Catalog getCatalog() {
+		return catalog;
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		externalIdentifiers.clear();
+		uris.clear();
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		if (Traversal.current().isActive()) {
+			return catalog.lookupExternalIdentifier(publicId, systemId);
+		}
+		ExternalIdentifierKey key = new ExternalIdentifierKey(publicId, systemId);
+		String result = externalIdentifiers.get(key);
+		if (result == null) {
+			missCount.increment();
+			long observed = generation.get();
+			long start = System.nanoTime();
+			result = catalog.lookupExternalIdentifier(publicId, systemId);
+			totalLoadTime.add(System.nanoTime() - start);
+			memoize(externalIdentifiers, key, result, observed);
+			return result;
+		}
+		hitCount.increment();
+		return result == MISS ? null : result;
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		if (uri == null || Traversal.current().isActive()) {
+			return catalog.lookupURI(uri);
+		}
+		String result = uris.get(uri);
+		if (result == null) {
+			missCount.increment();
+			long observed = generation.get();
+			long start = System.nanoTime();
+			result = catalog.lookupURI(uri);
+			totalLoadTime.add(System.nanoTime() - start);
+			memoize(uris, uri, result, observed);
+			return result;
+		}
+		hitCount.increment();
+		return result == MISS ? null : result;
+	}
+
+	public CacheStatistics statistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+	}
+}
@@ -0,0 +1,471 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import org.codegeny.xml.catalog.EntryType.Matching;
+
+/**
+ * Catalog whose entries can be added or removed at runtime.
+ *
+ * Entries are split in sections, one per resolution priority, each section being compiled into its own indexes (just like a catalog built by
+ * {@link CatalogBuilder}). Changes are applied in {@link #update(Consumer) batches} which copy only what they touch, then publish a new immutable snapshot
+ * atomically. Lookups never lock and always see either all or none of the changes of a batch.
+ *
+ * Exact entries (<code>system</code>, <code>public</code> and <code>uri</code>) are hashed by key into about &radic;n buckets of about &radic;n keys: a
+ * change only copies the bucket of its key and the array of buckets, so that its cost grows with the square root of the number of entries. Prefix and
+ * suffix entries (<code>rewrite*</code>, <code>*Suffix</code>, <code>delegate*</code>) and <code>nextCatalog</code> entries of each touched priority are
+ * recompiled entirely; they are expected to be few.
+ *
+ * <pre>
+ * catalog.update(batch -&gt; batch.addURI("urn:a", "a.xsd", null).remove(EntryType.URI, "urn:b"));
+ * </pre>
+ */
+public class MutableCatalog implements Catalog {
+
+	/**
+	 * Changes which are applied atomically by {@link MutableCatalog#update(Consumer)}. Targets are resolved against the catalog's base if no base is
+	 * given.
+	 */
+	public final class Batch {
+
+		private final List<Change> changes = new ArrayList<>();
+
+		private Batch() {}
+
+		private Batch add(Entry entry) {
+			changes.add(new Change(entry));
+			return this;
+		}
+
+		public Batch addDelegatePublic(String publicIdStartString, Catalog catalog) {
+			return add(Entry.delegate(EntryType.DELEGATE_PUBLIC, publicIdStartString, Prefer.orSystemDefault(prefer), catalog));
+		}
+
+		public Batch addDelegateSystem(String systemIdStartString, Catalog catalog) {
+			return add(Entry.delegate(EntryType.DELEGATE_SYSTEM, systemIdStartString, null, catalog));
+		}
+
+		public Batch addDelegateURI(String uriStartString, Catalog catalog) {
+			return add(Entry.delegate(EntryType.DELEGATE_URI, uriStartString, null, catalog));
+		}
+
+		public Batch addNextCatalog(Catalog catalog) {
+			return add(Entry.nextCatalog(catalog));
+		}
+
+		public Batch addPublic(String publicId, String uri, String base) {
+			return add(Entry.target(EntryType.PUBLIC, publicId, uri, base(base), Prefer.orSystemDefault(prefer)));
+		}
+
+		public Batch addRewriteSystem(String systemIdStartString, String rewritePrefix) {
+			return add(Entry.rewrite(EntryType.REWRITE_SYSTEM, systemIdStartString, rewritePrefix));
+		}
+
+		public Batch addRewriteURI(String uriStartString, String rewritePrefix) {
+			return add(Entry.rewrite(EntryType.REWRITE_URI, uriStartString, rewritePrefix));
+		}
+
+		public Batch addSystem(String systemId, String uri, String base) {
+			return add(Entry.target(EntryType.SYSTEM, systemId, uri, base(base), null));
+		}
+
+		public Batch addSystemSuffix(String systemIdSuffix, String uri, String base) {
+			return add(Entry.target(EntryType.SYSTEM_SUFFIX, systemIdSuffix, uri, base(base), null));
+		}
+
+		public Batch addURI(String name, String uri, String base) {
+			return add(Entry.target(EntryType.URI, name, uri, base(base), null));
+		}
+
+		public Batch addURISuffix(String uriSuffix, String uri, String base) {
+			return add(Entry.target(EntryType.URI_SUFFIX, uriSuffix, uri, base(base), null));
+		}
+
+		/**
+		 * Removes all entries of the given type with the given key (systemId, publicId, URI name, start string or suffix).
+		 */
+		public Batch remove(EntryType type, String key) {
+			if (type == EntryType.NEXT_CATALOG) {
+				throw new IllegalArgumentException("nextCatalog entries have no key, use removeNextCatalog()");
+			}
+			changes.add(new Change(type, key, e -> e.getType() == type && Objects.equals(e.getKey(), key)));
+			return this;
+		}
+
+		/**
+		 * Removes all <code>nextCatalog</code> entries referencing the given catalog.
+		 */
+		public Batch removeNextCatalog(Catalog catalog) {
+			changes.add(new Change(EntryType.NEXT_CATALOG, null, e -> e.getType() == EntryType.NEXT_CATALOG && e.getCatalog() == catalog));
+			return this;
+		}
+	}
+
+	private static final class Change {
+
+		private final Entry entry;
+		private final String key;
+		private final Predicate<Entry> removal;
+		private final EntryType type;
+
+		public Change(Entry entry) {
+			this(entry.getType(), entry.getKey(), entry, null);
+		}
+
+		public Change(EntryType type, String key, Predicate<Entry> removal) {
+			this(type, key, null, removal);
+		}
+
+		private Change(EntryType type, String key, Entry entry, Predicate<Entry> removal) {
+			this.type = type;
+			this.key = key;
+			this.entry = entry;
+			this.removal = removal;
+		}
+	}
+
+	/**
+	 * Exact entries of one section grouped by key into buckets which are copied on write, so that a change only copies the array of buckets and the bucket
+	 * of its key instead of the whole section. Buckets are split so that there are always about as many keys per bucket as buckets.
+	 */
+	private static final class Exact<M> {
+
+		@SuppressWarnings("unchecked")
+		private static <M> Map<String, Keyed<M>>[] buckets(int length) {
+			Map<String, Keyed<M>>[] buckets = (Map<String, Keyed<M>>[]) new Map<?, ?>[length];
+			Arrays.fill(buckets, Collections.emptyMap());
+			return buckets;
+		}
+
+		private static int index(String key, int length) {
+			int hash = Objects.hashCode(key);
+			return (hash ^ hash >>> 16) & length - 1;
+		}
+
+		// buckets are never modified once published
+		private final Map<String, Keyed<M>>[] buckets;
+		private final int size;
+		// the type of all entries (there is only one exact type per priority) or null if there never was any
+		private final EntryType type;
+
+		public Exact() {
+			this(null, buckets(1), 0);
+		}
+
+		private Exact(EntryType type, Map<String, Keyed<M>>[] buckets, int size) {
+			this.type = type;
+			this.buckets = buckets;
+			this.size = size;
+		}
+
+		public List<M> get(String key) {
+			Keyed<M> keyed = buckets[index(key, buckets.length)].get(key);
+			return keyed != null ? keyed.mappers : Collections.emptyList();
+		}
+
+		public Exact<M> update(List<Change> changes, Function<Entry, M> mapper) {
+			Map<String, Keyed<M>>[] buckets = this.buckets.clone();
+			boolean[] copied = new boolean[buckets.length];
+			int size = this.size;
+			for (Change change : changes) {
+				int index = index(change.key, buckets.length);
+				if (!copied[index]) {
+					buckets[index] = new HashMap<>(buckets[index]);
+					copied[index] = true;
+				}
+				Keyed<M> keyed = buckets[index].get(change.key);
+				Keyed<M> updated = change.entry != null ? Keyed.add(keyed, change.entry, mapper) : Keyed.remove(keyed, change.removal);
+				if (updated != null) {
+					buckets[index].put(change.key, updated);
+				} else {
+					buckets[index].remove(change.key);
+				}
+				size += (updated != null ? 1 : 0) - (keyed != null ? 1 : 0);
+			}
+			int length = buckets.length;
+			while (size > (long) length * length) {
+				length *= 2;
+			}
+			if (length > buckets.length) {
+				// splitting copies the whole section but only happens each time the number of keys quadruples
+				Map<String, Keyed<M>>[] split = buckets(length);
+				for (Map<String, Keyed<M>> bucket : buckets) {
+					bucket.forEach((key, value) -> {
+						int index = index(key, split.length);
+						if (split[index].isEmpty()) {
+							split[index] = new HashMap<>();
+						}
+						split[index].put(key, value);
+					});
+				}
+				buckets = split;
+			}
+			return new Exact<>(changes.get(0).type, buckets, size);
+		}
+
+		public void forEach(Consumer<Entry> consumer) {
+			for (Map<String, Keyed<M>> bucket : buckets) {
+				bucket.values().forEach(keyed -> keyed.entries.forEach(consumer));
+			}
+		}
+	}
+
+	/**
+	 * Entries of one key (in declaration order) along with their mappers.
+	 */
+	private static final class Keyed<M> {
+
+		public static <M> Keyed<M> add(Keyed<M> keyed, Entry entry, Function<Entry, M> mapper) {
+			List<Entry> entries = keyed != null ? new ArrayList<>(keyed.entries) : new ArrayList<>(1);
+			List<M> mappers = keyed != null ? new ArrayList<>(keyed.mappers) : new ArrayList<>(1);
+			entries.add(entry);
+			mappers.add(mapper.apply(entry));
+			return new Keyed<>(entries, mappers);
+		}
+
+		public static <M> Keyed<M> remove(Keyed<M> keyed, Predicate<Entry> removal) {
+			if (keyed == null) {
+				return null;
+			}
+			List<Entry> entries = new ArrayList<>();
+			List<M> mappers = new ArrayList<>();
+			for (int i = 0; i < keyed.entries.size(); i++) {
+				if (!removal.test(keyed.entries.get(i))) {
+					entries.add(keyed.entries.get(i));
+					mappers.add(keyed.mappers.get(i));
+				}
+			}
+			return entries.isEmpty() ? null : new Keyed<>(entries, mappers);
+		}
+
+		private final List<Entry> entries;
+		private final List<M> mappers;
+
+		private Keyed(List<Entry> entries, List<M> mappers) {
+			this.entries = entries;
+			this.mappers = mappers;
+		}
+	}
+
+	/**
+	 * Entries and indexes for one resolution priority. Exact entries are kept in their own {@link Exact index}, which comes last just like exact entries
+	 * sort after prefixes and suffixes of the same priority in {@link CatalogImpl#runs(List, ToIntFunction)}. Other entries (prefixes, suffixes and
+	 * next catalogs, usually few) are kept in a list and recompiled into tries whenever they change.
+	 */
+	private static final class Section<M> {
+
+		private final Exact<M> exact;
+		private final List<M> indexes;
+		private final List<Entry> others;
+
+		public Section() {
+			this(new Exact<>(), Collections.emptyList(), Collections.emptyList());
+		}
+
+		private Section(Exact<M> exact, List<Entry> others, List<M> indexes) {
+			this.exact = exact;
+			this.others = others;
+			this.indexes = indexes;
+		}
+
+		public Section<M> update(List<Change> changes, Sections<M> sections) {
+			List<Change> exactChanges = changes.stream().filter(change -> change.type.getMatching() == Matching.EXACT).collect(toList());
+			Exact<M> exact = exactChanges.isEmpty() ? this.exact : this.exact.update(exactChanges, sections.mapper);
+			List<Entry> others = this.others;
+			if (exactChanges.size() < changes.size()) {
+				others = new ArrayList<>(others);
+				for (Change change : changes) {
+					if (change.type.getMatching() != Matching.EXACT) {
+						if (change.entry != null) {
+							others.add(change.entry);
+						} else {
+							others.removeIf(change.removal);
+						}
+					}
+				}
+			}
+			List<M> indexes = CatalogImpl.runs(others, sections.priority).stream().map(sections.index).collect(toList());
+			if (exact.size > 0) {
+				indexes.add(sections.exactIndex.apply(exact));
+			}
+			return new Section<>(exact, others, indexes);
+		}
+	}
+
+	/**
+	 * Sections and mappers for one kind of lookup, by priority.
+	 */
+	private static final class Sections<M> {
+
+		private final Function<Exact<M>, M> exactIndex;
+		private final Function<List<Entry>, M> index;
+		private final Function<Entry, M> mapper;
+		private final M[] mappers;
+		private final ToIntFunction<EntryType> priority;
+		private final List<Section<M>> sections;
+
+		public Sections(ToIntFunction<EntryType> priority, Function<List<Entry>, M> index, Function<Entry, M> mapper, Function<Exact<M>, M> exactIndex, IntFunction<M[]> array) {
+			int size = Arrays.stream(EntryType.values()).mapToInt(priority).max().getAsInt() + 1;
+			this.priority = priority;
+			this.index = index;
+			this.mapper = mapper;
+			this.exactIndex = exactIndex;
+			this.sections = Collections.nCopies(size, new Section<>());
+			this.mappers = array.apply(0);
+		}
+
+		private Sections(Sections<M> previous, List<Change> changes) {
+			this.priority = previous.priority;
+			this.index = previous.index;
+			this.mapper = previous.mapper;
+			this.exactIndex = previous.exactIndex;
+			this.sections = new ArrayList<>(previous.sections);
+			List<List<Change>> changesBySection = new ArrayList<>(Collections.nCopies(sections.size(), null));
+			for (Change change : changes) {
+				int section = priority.applyAsInt(change.type);
+				if (section > 0) {
+					if (changesBySection.get(section) == null) {
+						changesBySection.set(section, new ArrayList<>());
+					}
+					changesBySection.get(section).add(change);
+				}
+			}
+			for (int section = 0; section < sections.size(); section++) {
+				if (changesBySection.get(section) != null) {
+					sections.set(section, sections.get(section).update(changesBySection.get(section), previous));
+				}
+			}
+			this.mappers = sections.stream().flatMap(section -> section.indexes.stream()).collect(toList()).toArray(Arrays.copyOf(previous.mappers, 0));
+		}
+
+		public void forEach(Consumer<Entry> consumer) {
+			for (Section<M> section : sections) {
+				section.others.forEach(consumer);
+				section.exact.forEach(consumer);
+			}
+		}
+
+		public Sections<M> update(List<Change> changes) {
+			return changes.isEmpty() ? this : new Sections<>(this, changes);
+		}
+	}
+
+	private static final class Snapshot {
+
+		private final Sections<ExternalIdentifierMapper> externalIdentifiers;
+		private final Sections<URIMapper> uris;
+
+		public Snapshot(Sections<ExternalIdentifierMapper> externalIdentifiers, Sections<URIMapper> uris) {
+			this.externalIdentifiers = externalIdentifiers;
+			this.uris = uris;
+		}
+	}
+
+	private final String base;
+	private final Prefer prefer;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * @param prefer The prefer value for <code>public</code> and <code>delegatePublic</code> entries (may be <code>null</code> to use the system
+	 *            default).
+	 * @param base The base against which relative targets are resolved (may be <code>null</code>).
+	 */
+	public MutableCatalog(Prefer prefer, String base) {
+		this.prefer = prefer;
+		this.base = base;
+		this.snapshot = new Snapshot(
+			new Sections<>(EntryType::getExternalIdentifierPriority, CatalogImpl::externalIdentifierIndex, Entry::externalIdentifierMapper, MutableCatalog::externalIdentifierIndex, ExternalIdentifierMapper[]::new),
+			new Sections<>(EntryType::getURIPriority, CatalogImpl::uriIndex, Entry::uriMapper, MutableCatalog::uriIndex, URIMapper[]::new));
+	}
+
+	private static ExternalIdentifierMapper externalIdentifierIndex(Exact<ExternalIdentifierMapper> exact) {
+		boolean keyedByPublicId = exact.type.isKeyedByPublicId();
+		return (ExternalIdentifierLookup) (p, s) -> CatalogImpl.lookupExternalIdentifier(exact.get(keyedByPublicId ? p : s), p, s);
+	}
+
+	private static URIMapper uriIndex(Exact<URIMapper> exact) {
+		return (URILookup) u -> CatalogImpl.lookupURI(exact.get(u), u);
+	}
+
+	private String base(String base) {
+		return base != null ? base : this.base;
+	}
+
+	@Override
+	public String lookupExternalIdentifier(String publicId, String systemId) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(this)) {
+				for (ExternalIdentifierMapper mapper : snapshot.externalIdentifiers.mappers) {
+					String result = mapper.lookupExternalIdentifier(publicId, systemId);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	@Override
+	public String lookupURI(String uri) {
+		Traversal traversal = Traversal.current();
+		boolean opened = traversal.enter(false);
+		try {
+			if (traversal.visit(this)) {
+				for (URIMapper mapper : snapshot.uris.mappers) {
+					String result = mapper.lookupURI(uri);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+			return null;
+		} finally {
+			traversal.exit(opened);
+		}
+	}
+
+	/**
+	 * @return An immutable catalog with the current entries.
+	 */
+	public Catalog snapshot() {
+		Snapshot snapshot = this.snapshot;
+		List<Entry> entries = new ArrayList<>();
+		snapshot.externalIdentifiers.forEach(entries::add);
+		snapshot.uris.forEach(entry -> {
+			if (entry.getType() != EntryType.NEXT_CATALOG) {
+				entries.add(entry);
+			}
+		});
+		return new CatalogImpl(entries, null);
+	}
+
+	/**
+	 * Applies the changes of a batch atomically. Updates are serialized but never block lookups.
+	 *
+	 * @param changes The consumer which records changes in the batch.
+	 * @throws CatalogException If an entry is invalid, in which case no change is applied.
+	 */
+	public synchronized void update(Consumer<Batch> changes) {
+		Batch batch = new Batch();
+		changes.accept(batch);
+		snapshot = new Snapshot(snapshot.externalIdentifiers.update(batch.changes), snapshot.uris.update(batch.changes));
+	}
+}
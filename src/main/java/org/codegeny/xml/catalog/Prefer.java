@@ -1,7 +1,5 @@
 package org.codegeny.xml.catalog;
 
-import java.util.Optional;
-
 /**
  * A prefer value specifies whether a public id or system id should be preferred when mapping external identifiers. 
  * 
@@ -19,7 +17,18 @@ public enum Prefer {
 		return valueOf(value.toUpperCase());
 	}
 	
+	static Prefer orSystemDefault(Prefer prefer) {
+		if (prefer != null) {
+			return prefer;
+		}
+		Prefer systemDefault = getSystemDefault();
+		if (systemDefault == null) {
+			throw new CatalogException("No 'prefer' attribute was specified");
+		}
+		return systemDefault;
+	}
+	
 	public ExternalIdentifierMapper wrap(ExternalIdentifierMapper mapper) {
-		return (p, s) -> (equals(PUBLIC) || s == null) ? mapper.mapExternalIdentifier(p, s) : Optional.empty();
+		return (ExternalIdentifierLookup) (p, s) -> (equals(PUBLIC) || s == null) ? mapper.lookupExternalIdentifier(p, s) : null;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,145 @@
+package org.codegeny.xml.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Catalog cache which reloads <code>file:</code> catalogs when their last modification time changes. Files are polled in the background and changed
+ * catalogs are re-parsed before being swapped in atomically; lookups never block and always see a fully built catalog.
+ *
+ * Catalogs which are not backed by a file are cached forever, just like {@link SimpleCatalogCache}. Call {@link #close()} to stop polling.
+ *
+ * When a modified catalog cannot be reloaded (it cannot be read or parsed, e.g. while being edited), the previous version is kept, the failure is
+ * reported to the {@link CatalogListener#catalogReloadFailed(String, Exception) listener} (which logs it by default) and reloading is attempted again on
+ * next poll.
+ */
+public class ReloadingCatalogCache implements CatalogCache, Closeable {
+
+	static class ReloadingCatalog implements Catalog {
+
+		private volatile Catalog catalog;
+		private FileTime lastModifiedTime;
+		private final Path path;
+		private final Supplier<Catalog> supplier;
+
+		public ReloadingCatalog(Path path, Supplier<Catalog> supplier) {
+			this.path = path;
+			this.supplier = supplier;
+			try {
+				this.lastModifiedTime = Files.getLastModifiedTime(path);
+			} catch (IOException ioException) {
+				throw new CatalogException("Cannot read last modification time of " + path, ioException);
+			}
+			this.catalog = supplier.get();
+		}
+
+		Catalog getCatalog() {
+			return catalog;
+		}
+
+		@Override
+		public String lookupExternalIdentifier(String publicId, String systemId) {
+			return catalog.lookupExternalIdentifier(publicId, systemId);
+		}
+
+		@Override
+		public String lookupURI(String uri) {
+			return catalog.lookupURI(uri);
+		}
+
+		public synchronized void reloadIfModified() throws IOException {
+			FileTime modifiedTime = Files.getLastModifiedTime(path);
+			if (!modifiedTime.equals(lastModifiedTime)) {
+				// keep the previous version (and retry on next poll) if the modified catalog cannot be parsed
+				catalog = supplier.get();
+				lastModifiedTime = modifiedTime;
+			}
+		}
+	}
+
+	private final CatalogCache cache = new SimpleCatalogCache();
+	private final Map<String, ReloadingCatalog> catalogs = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService executor;
+	private final CatalogListener listener;
+
+	/**
+	 * Creates a cache which logs reload failures.
+	 *
+	 * @param period The delay between two polls.
+	 * @param unit The unit of the period.
+	 */
+	public ReloadingCatalogCache(long period, TimeUnit unit) {
+		this(period, unit, new CatalogListener() {
+
+			@Override
+			public void catalogReloadFailed(String systemId, Exception exception) {
+				Logger.getLogger(ReloadingCatalogCache.class.getName()).log(Level.WARNING, "Cannot reload catalog " + systemId, exception);
+			}
+		});
+	}
+
+	/**
+	 * @param period The delay between two polls.
+	 * @param unit The unit of the period.
+	 * @param listener The listener notified of reload failures.
+	 */
+	public ReloadingCatalogCache(long period, TimeUnit unit, CatalogListener listener) {
+		this.listener = requireNonNull(listener, "listener cannot be null");
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, ReloadingCatalogCache.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor.scheduleWithFixedDelay(this::reload, period, period, unit);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Checks all <code>file:</code> catalogs and reloads the ones which were modified. This method is called periodically but may also be called
+	 * explicitly.
+	 */
+	public void reload() {
+		for (Map.Entry<String, ReloadingCatalog> entry : catalogs.entrySet()) {
+			try {
+				entry.getValue().reloadIfModified();
+			} catch (IOException | RuntimeException exception) {
+				// the catalog is probably being edited, try again on next poll
+				listener.catalogReloadFailed(entry.getKey(), exception);
+			}
+		}
+	}
+
+	@Override
+	public Catalog resolve(String systemId, Supplier<Catalog> supplier) {
+		if (systemId == null) {
+			return supplier.get();
+		}
+		if (!systemId.startsWith("file:")) {
+			return cache.resolve(systemId, supplier);
+		}
+		return cache.resolve(systemId, () -> {
+			ReloadingCatalog catalog = new ReloadingCatalog(Paths.get(URI.create(systemId)), supplier);
+			catalogs.put(systemId, catalog);
+			return catalog;
+		});
+	}
+}
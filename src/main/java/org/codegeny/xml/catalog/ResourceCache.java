@@ -0,0 +1,487 @@
+package org.codegeny.xml.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Cache for the content of resources mapped by catalogs, keyed by their mapped URI. Just like {@link URIMapper#decorate(URIResolver)} and
+ * {@link ExternalIdentifierMapper#decorate(LSResourceResolver)}, the resolvers created by {@link #uriResolver(URIMapper, URIResolver)} and
+ * {@link #resourceResolver(ExternalIdentifierMapper, LSResourceResolver)} wrap a resolver of their own which is given the mapped URI; what it returns is
+ * only read once (by one thread, others wait for it) and then served as fresh {@link Source}s or {@link LSInput}s backed by the cached content.
+ * Identifiers which are not mapped are passed to the wrapped resolver as is and are not cached.
+ *
+ * Content is copied on-heap or {@link Builder#offHeap() off-heap}, <code>file:</code> resources may also be {@link Builder#memoryMapped()
+ * memory-mapped}; the total size is bounded and least recently used resources are evicted first.
+ */
+public class ResourceCache {
+
+	public static class Builder {
+
+		private long maximumSize = Long.MAX_VALUE;
+		private boolean memoryMapped;
+		private boolean offHeap;
+
+		private Builder() {}
+
+		public ResourceCache build() {
+			return new ResourceCache(this);
+		}
+
+		/**
+		 * @param maximumSize The maximum total size of cached resources, in bytes.
+		 */
+		public Builder maximumSize(long maximumSize) {
+			this.maximumSize = maximumSize;
+			return this;
+		}
+
+		/**
+		 * Memory-maps <code>file:</code> resources instead of copying them (other resources are stored {@link #offHeap() off-heap}). Mapped content is
+		 * not a snapshot: in-place changes to a file are visible through the cache, truncating a mapped file makes reads fail with an
+		 * {@link InternalError} and, on Windows, mapped files cannot be deleted or replaced until their mapping is garbage collected. Only use it for files
+		 * which are never modified while cached.
+		 */
+		public Builder memoryMapped() {
+			this.memoryMapped = true;
+			this.offHeap = true;
+			return this;
+		}
+
+		/**
+		 * Copies content into direct buffers instead of heap arrays.
+		 */
+		public Builder offHeap() {
+			this.offHeap = true;
+			return this;
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+	}
+
+	private static class CachedLSInput implements LSInput {
+
+		private String baseURI;
+		private InputStream byteStream;
+		private boolean certifiedText;
+		private Reader characterStream;
+		private String encoding;
+		private String publicId;
+		private String stringData;
+		private String systemId;
+
+		public CachedLSInput(String publicId, Content content) {
+			this.publicId = publicId;
+			this.systemId = content.systemId;
+			this.encoding = content.encoding;
+			this.byteStream = content.byteStream();
+			this.characterStream = content.characterStream();
+		}
+
+		@Override
+		public String getBaseURI() {
+			return baseURI;
+		}
+
+		@Override
+		public InputStream getByteStream() {
+			return byteStream;
+		}
+
+		@Override
+		public boolean getCertifiedText() {
+			return certifiedText;
+		}
+
+		@Override
+		public Reader getCharacterStream() {
+			return characterStream;
+		}
+
+		@Override
+		public String getEncoding() {
+			return encoding;
+		}
+
+		@Override
+		public String getPublicId() {
+			return publicId;
+		}
+
+		@Override
+		public String getStringData() {
+			return stringData;
+		}
+
+		@Override
+		public String getSystemId() {
+			return systemId;
+		}
+
+		@Override
+		public void setBaseURI(String baseURI) {
+			this.baseURI = baseURI;
+		}
+
+		@Override
+		public void setByteStream(InputStream byteStream) {
+			this.byteStream = byteStream;
+		}
+
+		@Override
+		public void setCertifiedText(boolean certifiedText) {
+			this.certifiedText = certifiedText;
+		}
+
+		@Override
+		public void setCharacterStream(Reader characterStream) {
+			this.characterStream = characterStream;
+		}
+
+		@Override
+		public void setEncoding(String encoding) {
+			this.encoding = encoding;
+		}
+
+		@Override
+		public void setPublicId(String publicId) {
+			this.publicId = publicId;
+		}
+
+		@Override
+		public void setStringData(String stringData) {
+			this.stringData = stringData;
+		}
+
+		@Override
+		public void setSystemId(String systemId) {
+			this.systemId = systemId;
+		}
+	}
+
+	/**
+	 * Content of a resource, either bytes (whose encoding is detected by the parser unless given) or characters.
+	 */
+	private static class Content {
+
+		private final ByteBuffer bytes;
+		private final char[] characters;
+		private final String encoding;
+		private final String systemId;
+
+		public Content(ByteBuffer bytes, char[] characters, String encoding, String systemId) {
+			this.bytes = bytes;
+			this.characters = characters;
+			this.encoding = encoding;
+			this.systemId = systemId;
+		}
+
+		public InputStream byteStream() {
+			return bytes != null ? new ByteBufferInputStream(bytes.duplicate()) : null;
+		}
+
+		public Reader characterStream() {
+			return characters != null ? new CharArrayReader(characters) : null;
+		}
+
+		public long size() {
+			return bytes != null ? bytes.capacity() : characters.length * 2L;
+		}
+
+		public Source source() {
+			StreamSource source = new StreamSource(systemId);
+			source.setInputStream(byteStream());
+			source.setReader(characterStream());
+			return source;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Loader {
+
+		Content load() throws IOException, TransformerException;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	private static char[] characters(Reader input) throws IOException {
+		CharArrayWriter output = new CharArrayWriter();
+		try (Reader closing = input) {
+			char[] buffer = new char[8192];
+			for (int length; (length = closing.read(buffer)) >= 0;) {
+				output.write(buffer, 0, length);
+			}
+		}
+		return output.toCharArray();
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException completionException) {
+			if (completionException.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) completionException.getCause();
+			}
+			if (completionException.getCause() instanceof Error) {
+				throw (Error) completionException.getCause();
+			}
+			throw completionException;
+		}
+	}
+
+	private static String resolve(String uri, String base) {
+		// best effort, URIs which cannot be resolved here (custom schemes) are kept as is
+		try {
+			return base != null && !URI.create(uri).isAbsolute() ? URI.create(base).resolve(uri).toString() : uri;
+		} catch (IllegalArgumentException illegalArgumentException) {
+			return uri;
+		}
+	}
+
+	private final Map<String, Content> contents = new LinkedHashMap<>(16, 0.75f, true);
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder hitCount = new LongAdder();
+	private final ConcurrentMap<String, CompletableFuture<Content>> loads = new ConcurrentHashMap<>();
+	private final long maximumSize;
+	private final boolean memoryMapped;
+	private final LongAdder missCount = new LongAdder();
+	private final boolean offHeap;
+	private long size;
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	private ResourceCache(Builder builder) {
+		this.maximumSize = builder.maximumSize;
+		this.memoryMapped = builder.memoryMapped;
+		this.offHeap = builder.offHeap;
+	}
+
+	private ByteBuffer bytes(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream closing = input) {
+			byte[] buffer = new byte[8192];
+			for (int length; (length = closing.read(buffer)) >= 0;) {
+				output.write(buffer, 0, length);
+			}
+		}
+		byte[] bytes = output.toByteArray();
+		if (offHeap) {
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+			direct.put(bytes);
+			((Buffer) direct).flip(); // Buffer.flip() as ByteBuffer.flip() does not exist before Java 9
+			return direct;
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	public void invalidateAll() {
+		synchronized (contents) {
+			contents.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * Reads the content the wrapped resolver returned, resources only given by their systemId are read from it.
+	 */
+	private Content load(InputStream byteStream, Reader characterStream, String stringData, String encoding, String systemId, String key) throws IOException {
+		String resolved = systemId != null ? systemId : key;
+		if (byteStream != null) {
+			return new Content(bytes(byteStream), null, encoding, resolved);
+		}
+		if (characterStream != null) {
+			return new Content(null, characters(characterStream), encoding, resolved);
+		}
+		if (stringData != null) {
+			return new Content(null, stringData.toCharArray(), encoding, resolved);
+		}
+		if (memoryMapped && resolved.startsWith("file:")) {
+			try (FileChannel channel = FileChannel.open(Paths.get(URI.create(resolved)), StandardOpenOption.READ)) {
+				return new Content(channel.map(MapMode.READ_ONLY, 0, channel.size()), null, encoding, resolved);
+			}
+		}
+		return new Content(bytes(new URL(resolved).openStream()), null, encoding, resolved);
+	}
+
+	/**
+	 * Returns the cached content for the given key or loads it, only one thread loads a given key at once while other ones wait for it.
+	 */
+	private Content open(String key, Loader loader) {
+		Content content;
+		synchronized (contents) {
+			content = contents.get(key);
+		}
+		if (content != null) {
+			hitCount.increment();
+			return content;
+		}
+		CompletableFuture<Content> loading = new CompletableFuture<>();
+		CompletableFuture<Content> future = loads.putIfAbsent(key, loading);
+		if (future != null) {
+			hitCount.increment();
+			return join(future);
+		}
+		try {
+			synchronized (contents) {
+				content = contents.get(key);
+			}
+			if (content != null) {
+				// loaded by another thread since the first check
+				hitCount.increment();
+			} else {
+				missCount.increment();
+				long start = System.nanoTime();
+				try {
+					content = loader.load();
+				} catch (IOException ioException) {
+					throw new CatalogException(String.format("Could not read resource '%s'", key), ioException);
+				} catch (TransformerException transformerException) {
+					throw new CatalogException(String.format("Could not resolve resource '%s'", key), transformerException);
+				}
+				totalLoadTime.add(System.nanoTime() - start);
+				if (content != null) {
+					put(key, content);
+				}
+			}
+			loading.complete(content);
+			return content;
+		} catch (RuntimeException | Error throwable) {
+			loading.completeExceptionally(throwable);
+			throw throwable;
+		} finally {
+			loads.remove(key, loading);
+		}
+	}
+
+	private void put(String key, Content content) {
+		if (content.size() > maximumSize) {
+			return;
+		}
+		synchronized (contents) {
+			Content previous = contents.put(key, content);
+			size += content.size() - (previous != null ? previous.size() : 0);
+			for (Iterator<Content> iterator = contents.values().iterator(); size > maximumSize && iterator.hasNext();) {
+				size -= iterator.next().size();
+				iterator.remove();
+				evictionCount.increment();
+			}
+		}
+	}
+
+	/**
+	 * @param mapper The mapper for external identifiers (usually a {@link Catalog}).
+	 * @param resourceResolver The resolver given mapped systemIds (and identifiers which are not mapped).
+	 * @return A resource resolver returning cached content for mapped external identifiers.
+	 */
+	public LSResourceResolver resourceResolver(ExternalIdentifierMapper mapper, LSResourceResolver resourceResolver) {
+		return (type, namespaceURI, publicId, systemId, baseURI) -> {
+			String mapped = mapper.lookupExternalIdentifier(publicId, systemId);
+			if (mapped == null) {
+				return resourceResolver.resolveResource(type, namespaceURI, publicId, systemId, baseURI);
+			}
+			String key = resolve(mapped, baseURI);
+			Content content = open(key, () -> {
+				LSInput input = resourceResolver.resolveResource(type, namespaceURI, publicId, mapped, baseURI);
+				return input != null ? load(input.getByteStream(), input.getCharacterStream(), input.getStringData(), input.getEncoding(), input.getSystemId() != null ? resolve(input.getSystemId(), input.getBaseURI()) : null, key) : null;
+			});
+			return content != null ? new CachedLSInput(publicId, content) : null;
+		};
+	}
+
+	public long size() {
+		synchronized (contents) {
+			return size;
+		}
+	}
+
+	public CacheStatistics statistics() {
+		return new CacheStatistics(hitCount.sum(), missCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+	}
+
+	/**
+	 * @param mapper The mapper for URIs (usually a {@link Catalog}).
+	 * @param uriResolver The resolver given mapped URIs (and URIs which are not mapped), it must return {@link StreamSource}s or {@link SAXSource}s.
+	 * @return A URI resolver returning cached content for mapped URIs.
+	 */
+	public URIResolver uriResolver(URIMapper mapper, URIResolver uriResolver) {
+		return (href, base) -> {
+			String mapped = mapper.lookupURI(href);
+			if (mapped == null) {
+				return uriResolver.resolve(href, base);
+			}
+			String key = resolve(mapped, base);
+			Content content = open(key, () -> {
+				Source source = uriResolver.resolve(mapped, base);
+				if (source == null) {
+					return null;
+				}
+				InputSource input = SAXSource.sourceToInputSource(source);
+				if (input == null) {
+					throw new CatalogException(String.format("Cannot cache resource '%s' of type '%s'", key, source.getClass().getName()));
+				}
+				return load(input.getByteStream(), input.getCharacterStream(), null, input.getEncoding(), input.getSystemId(), key);
+			});
+			return content != null ? content.source() : null;
+		};
+	}
+}
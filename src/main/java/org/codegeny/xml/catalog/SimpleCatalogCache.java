@@ -1,20 +1,25 @@
 package org.codegeny.xml.catalog;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import static java.util.Objects.requireNonNull;
+
 import java.util.function.Supplier;
 
 /**
- * Simple implementation for catalog cache that uses a ConcurrentHashMap. 
- * 
+ * Simple implementation for catalog cache that keeps catalogs forever.
+ *
+ * Each catalog is loaded once by the first thread which needs it while other threads wait for it. Loads are performed outside of any lock so that loading
+ * a catalog may resolve other catalogs (<code>nextCatalog</code>, <code>delegate*</code>) through the same cache, possibly in parallel. When waiting for a
+ * catalog would dead-lock (a cyclic reference, either within one thread or across threads), a {@link LazyCatalog} is returned instead so that the cycle
+ * is only followed once all catalogs are loaded. Failed loads are not cached.
+ *
  * @author Xavier Dury
  */
 public class SimpleCatalogCache implements CatalogCache {
-	
-	private final ConcurrentMap<String, Catalog> cache = new ConcurrentHashMap<>();
-	
+
+	private final CatalogLoads loads = new CatalogLoads(true);
+
 	@Override
 	public Catalog resolve(String systemId, Supplier<Catalog> supplier) {
-		return cache.computeIfAbsent(systemId, key -> supplier.get());
+		return loads.load(systemId, () -> requireNonNull(supplier.get(), "supplier cannot return null"));
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Per-thread record of the catalogs already evaluated during one resolution, so that a catalog shared by several paths of a catalog graph (diamonds,
+ * delegates to the same catalog for different prefixes) or reachable through a cycle is evaluated at most once. As every catalog of a resolution is
+ * looked up with the same identifiers, evaluating it again could only give the same result or never end.
+ *
+ * A resolution is a scope opened by the outermost lookup. Batch lookups open their own kind of scope as the single lookups they may fall back to (for
+ * each identifier of the batch) are separate resolutions; as different paths may leave different identifiers of a batch to the same catalog, batch
+ * lookups {@link #leave()} catalogs once evaluated and only skip the ones being evaluated (cycles). Visited catalogs are kept in an identity hash
+ * table which is unwound in reverse order when a scope is closed, so that a resolution does not allocate anything once the table is large enough.
+ */
+final class Traversal {
+
+	private static final ThreadLocal<Traversal> CURRENT = ThreadLocal.withInitial(Traversal::new);
+
+	public static Traversal current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs the given supplier outside of the current resolution (e.g. when a lookup loads a catalog whose loading performs lookups of its own).
+	 */
+	public static <T> T isolated(Supplier<T> supplier) {
+		Traversal previous = CURRENT.get();
+		if (previous.depth == 0) {
+			return supplier.get();
+		}
+		CURRENT.set(new Traversal());
+		try {
+			return supplier.get();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	private static int mix(int hash) {
+		return hash ^ hash >>> 16;
+	}
+
+	private boolean[] batches = new boolean[4];
+	private int depth;
+	private Object[] keys = new Object[32];
+	private int[] scopes = new int[32];
+	private int size;
+	private int[] slots = new int[16];
+	private int[] starts = new int[4];
+
+	private Traversal() {}
+
+	/**
+	 * @return <code>true</code> if a resolution is in progress on the current thread (lookups are then performed on behalf of an enclosing one).
+	 */
+	public boolean isActive() {
+		return depth > 0;
+	}
+
+	/**
+	 * Opens a new scope unless the innermost one is of the same kind.
+	 *
+	 * @param batch If the scope is for a batch lookup.
+	 * @return <code>true</code> if a scope was opened (to be given to {@link #exit(boolean)}).
+	 */
+	public boolean enter(boolean batch) {
+		if (depth > 0 && batches[depth - 1] == batch) {
+			return false;
+		}
+		if (depth == starts.length) {
+			starts = Arrays.copyOf(starts, depth * 2);
+			batches = Arrays.copyOf(batches, depth * 2);
+		}
+		starts[depth] = size;
+		batches[depth++] = batch;
+		return true;
+	}
+
+	public void exit(boolean opened) {
+		if (opened) {
+			// removing the last inserted keys first restores the table exactly as it was before the scope was opened
+			for (int start = starts[--depth]; size > start;) {
+				keys[slots[--size]] = null;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the last visited catalog.
+	 */
+	public void leave() {
+		keys[slots[--size]] = null;
+	}
+
+	private void insert(Object catalog, int scope) {
+		int mask = keys.length - 1;
+		int slot = mix(System.identityHashCode(catalog)) & mask;
+		while (keys[slot] != null) {
+			slot = slot + 1 & mask;
+		}
+		keys[slot] = catalog;
+		scopes[slot] = scope;
+		if (size == slots.length) {
+			slots = Arrays.copyOf(slots, size * 2);
+		}
+		slots[size++] = slot;
+	}
+
+	private void resize() {
+		Object[] oldKeys = keys;
+		int[] oldScopes = scopes;
+		int[] oldSlots = Arrays.copyOf(slots, size);
+		keys = new Object[oldKeys.length * 2];
+		scopes = new int[oldKeys.length * 2];
+		size = 0;
+		for (int slot : oldSlots) {
+			insert(oldKeys[slot], oldScopes[slot]);
+		}
+	}
+
+	/**
+	 * Marks the given catalog as visited in the current scope.
+	 *
+	 * @return <code>false</code> if it was already visited.
+	 */
+	public boolean visit(Object catalog) {
+		int mask = keys.length - 1;
+		for (int slot = mix(System.identityHashCode(catalog)) & mask; keys[slot] != null; slot = slot + 1 & mask) {
+			if (keys[slot] == catalog && scopes[slot] == depth) {
+				return false;
+			}
+		}
+		if (2 * (size + 1) > keys.length) {
+			resize();
+		}
+		insert(catalog, depth);
+		return true;
+	}
+}
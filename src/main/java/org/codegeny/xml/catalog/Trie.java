@@ -0,0 +1,194 @@
+package org.codegeny.xml.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Character trie used to index catalog entries by prefix (or by suffix when keys are read backwards). Lookups return the node of the longest matching key,
+ * each node being linked to the node of the next shorter matching key so that all matches can be visited from the longest to the shortest without any
+ * allocation.
+ *
+ * Instances must be fully populated and {@link #link() linked} before being shared between threads.
+ *
+ * @param <V> The type of values.
+ */
+class Trie<V> {
+
+	static class Node<V> {
+
+		private static final char[] NO_LABELS = {};
+
+		private Node<?>[] children;
+		private char[] labels = NO_LABELS;
+		private Node<V> next;
+		private List<V> values = Collections.emptyList();
+
+		private Node<V> child(char label) {
+			int index = Arrays.binarySearch(labels, label);
+			return index < 0 ? null : child(index);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Node<V> child(int index) {
+			return (Node<V>) children[index];
+		}
+
+		private Node<V> getOrCreateChild(char label) {
+			int index = Arrays.binarySearch(labels, label);
+			if (index >= 0) {
+				return child(index);
+			}
+			index = -index - 1;
+			Node<V> child = new Node<>();
+			char[] newLabels = new char[labels.length + 1];
+			Node<?>[] newChildren = new Node<?>[labels.length + 1];
+			System.arraycopy(labels, 0, newLabels, 0, index);
+			System.arraycopy(labels, index, newLabels, index + 1, labels.length - index);
+			newLabels[index] = label;
+			if (children != null) {
+				System.arraycopy(children, 0, newChildren, 0, index);
+				System.arraycopy(children, index, newChildren, index + 1, labels.length - index);
+			}
+			newChildren[index] = child;
+			labels = newLabels;
+			children = newChildren;
+			return child;
+		}
+
+		/**
+		 * @return The node of the next shorter matching key or <code>null</code>.
+		 */
+		public Node<V> getNext() {
+			return next;
+		}
+
+		/**
+		 * @return The values associated with this node's key, in insertion order.
+		 */
+		public List<V> getValues() {
+			return values;
+		}
+
+		private void link(Node<V> next) {
+			this.next = next;
+			Node<V> match = values.isEmpty() ? next : this;
+			for (int i = 0; i < labels.length; i++) {
+				child(i).link(match);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> Node<V>[] nodes(int length) {
+		return (Node<V>[]) new Node<?>[length];
+	}
+
+	public static <V> Trie<V> prefixes() {
+		return new Trie<>(false);
+	}
+
+	public static <V> Trie<V> suffixes() {
+		return new Trie<>(true);
+	}
+
+	private final boolean reversed;
+	private final Node<V> root = new Node<>();
+
+	private Trie(boolean reversed) {
+		this.reversed = reversed;
+	}
+
+	private char charAt(String key, int index) {
+		return key.charAt(reversed ? key.length() - index - 1 : index);
+	}
+
+	/**
+	 * Returns the node holding the longest key which is a prefix (or suffix) of the given key.
+	 *
+	 * @param key The key (may be <code>null</code>).
+	 * @return The matching node or <code>null</code> if no key matches.
+	 */
+	public Node<V> longestMatch(String key) {
+		if (key == null) {
+			return null;
+		}
+		Node<V> node = root;
+		Node<V> match = root.values.isEmpty() ? null : root;
+		for (int i = 0, length = key.length(); i < length && (node = node.child(charAt(key, i))) != null; i++) {
+			if (!node.values.isEmpty()) {
+				match = node;
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Batch version of {@link #longestMatch(String)}. The walk is resumed from the characters shared with the previous key, so keys sorted in trie order
+	 * (lexicographically, or by their reversed form for suffixes) visit each node at most once.
+	 *
+	 * @param keys The keys (elements may be <code>null</code>).
+	 * @return The matching nodes (or <code>null</code> where no key matches), in the same order as the given keys.
+	 */
+	public Node<V>[] longestMatches(String[] keys) {
+		Node<V>[] matches = nodes(keys.length);
+		// path[i] is the node reached after i characters of the previous key and best[i] the longest match on that path
+		Node<V>[] path = nodes(16);
+		Node<V>[] best = nodes(16);
+		path[0] = root;
+		best[0] = root.values.isEmpty() ? null : root;
+		String previous = null;
+		int depth = 0;
+		for (int k = 0; k < keys.length; k++) {
+			String key = keys[k];
+			if (key == null) {
+				continue;
+			}
+			int i = 0;
+			if (previous != null) {
+				for (int max = Math.min(depth, key.length()); i < max && charAt(previous, i) == charAt(key, i); i++);
+			}
+			Node<V> node = path[i];
+			Node<V> match = best[i];
+			for (int length = key.length(); i < length && (node = node.child(charAt(key, i))) != null;) {
+				if (!node.values.isEmpty()) {
+					match = node;
+				}
+				if (++i == path.length) {
+					path = Arrays.copyOf(path, i * 2);
+					best = Arrays.copyOf(best, i * 2);
+				}
+				path[i] = node;
+				best[i] = match;
+			}
+			matches[k] = match;
+			previous = key;
+			depth = i;
+		}
+		return matches;
+	}
+
+	/**
+	 * Associates the given value to the given key. Values associated with the same key are kept in insertion order.
+	 */
+	public Trie<V> put(String key, V value) {
+		Node<V> node = root;
+		for (int i = 0, length = key.length(); i < length; i++) {
+			node = node.getOrCreateChild(charAt(key, i));
+		}
+		if (node.values.isEmpty()) {
+			node.values = new ArrayList<>(1);
+		}
+		node.values.add(value);
+		return this;
+	}
+
+	/**
+	 * Links every node to the node of its next shorter matching key. Must be called once all values have been {@link #put(String, Object) put}.
+	 */
+	public Trie<V> link() {
+		root.link(null);
+		return this;
+	}
+}
@@ -0,0 +1,18 @@
+package org.codegeny.xml.catalog;
+
+import java.util.Optional;
+
+/**
+ * {@link URIMapper} implemented by its allocation-free {@link #lookupURI(String)} method, for internal lambdas.
+ */
+@FunctionalInterface
+interface URILookup extends URIMapper {
+
+	@Override
+	String lookupURI(String uri);
+
+	@Override
+	default Optional<String> mapURI(String uri) {
+		return Optional.ofNullable(lookupURI(uri));
+	}
+}
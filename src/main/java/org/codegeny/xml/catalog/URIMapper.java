@@ -1,5 +1,7 @@
 package org.codegeny.xml.catalog;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import javax.xml.transform.URIResolver;
@@ -9,11 +11,53 @@ import javax.xml.transform.URIResolver;
  * 
  * @author Xavier Dury
  */
+@FunctionalInterface
 public interface URIMapper {
 	
 	default URIResolver decorate(URIResolver uriResolver) {
-		return (href, base) -> uriResolver.resolve(mapURI(href).orElse(href), base);
+		return (href, base) -> {
+			String mapped = lookupURI(href);
+			return uriResolver.resolve(mapped != null ? mapped : href, base);
+		};
+	}
+	
+	/**
+	 * Low-level lookup which does not allocate any intermediate object. The default implementation delegates to {@link #mapURI(String)}; implementations
+	 * which care about allocations should override this method and implement {@link #mapURI(String)} on top of it.
+	 * 
+	 * @param uri The URI (may be <code>null</code>).
+	 * @return The mapped URI or <code>null</code> if there is no mapping.
+	 */
+	default String lookupURI(String uri) {
+		return mapURI(uri).orElse(null);
+	}
+	
+	/**
+	 * Batch version of {@link #lookupURI(String)}. Implementations may group or reorder lookups internally.
+	 * 
+	 * @param uris The URIs (elements may be <code>null</code>).
+	 * @return The mapped URIs (or <code>null</code> where there is no mapping), in the same order as the given URIs.
+	 */
+	default String[] lookupURIs(String[] uris) {
+		String[] results = new String[uris.length];
+		for (int i = 0; i < uris.length; i++) {
+			results[i] = lookupURI(uris[i]);
+		}
+		return results;
+	}
+	
+	/**
+	 * @param uris The URIs (elements may be <code>null</code>).
+	 * @param parallel If <code>true</code>, large batches are split and looked up in parallel in the common fork-join pool.
+	 * @return The mapped URIs (or <code>null</code> where there is no mapping), in the same order as the given URIs.
+	 */
+	default String[] lookupURIs(String[] uris, boolean parallel) {
+		return parallel ? Batches.parallel(uris, this::lookupURIs) : lookupURIs(uris);
 	}
 	
 	Optional<String> mapURI(String uri);
+	
+	default List<Optional<String>> mapURIs(Collection<String> uris) {
+		return Batches.optionals(lookupURIs(uris.toArray(new String[uris.size()])));
+	}
 }
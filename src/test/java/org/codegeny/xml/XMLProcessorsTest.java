@@ -0,0 +1,127 @@
+package org.codegeny.xml;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import org.codegeny.xml.catalog.Catalog;
+import org.codegeny.xml.catalog.ResourceCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class XMLProcessorsTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Catalog catalog;
+
+	@Before
+	public void setUp() throws IOException {
+		write("entities.dtd", "<!ENTITY greeting 'hello'>");
+		write("schema.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='a' type='xs:int'/></xs:schema>");
+		write("included.xsl", "<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:template match='a'>[<xsl:value-of select='.'/>]</xsl:template></xsl:stylesheet>");
+		write("stylesheet.xsl", "<xsl:stylesheet version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/><xsl:include href='urn:included'/></xsl:stylesheet>");
+		this.catalog = newCatalog(PUBLIC, temporaryFolder.getRoot().toURI().toString())
+			.addPublic("-//TEST//ENTITIES//EN", "entities.dtd", null)
+			.addURI("urn:schema", "schema.xsd", null)
+			.addURI("urn:included", "included.xsl", null)
+			.addURI("urn:stylesheet", "stylesheet.xsl", null)
+			.end();
+	}
+
+	@Test
+	public void documentBuilderTest() throws Exception {
+		test(XMLProcessors.builder(catalog).build());
+	}
+
+	@Test
+	public void resourceCacheTest() throws Exception {
+		test(XMLProcessors.builder(catalog).resourceCache(ResourceCache.builder().build()).build());
+	}
+
+	@Test
+	public void customSchemeTest() throws Exception {
+		
+		Catalog catalog = newCatalog(PUBLIC, null).addURI("urn:schema", "memory:schema.xsd", null).end();
+		String schema = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='a' type='xs:int'/></xs:schema>";
+		URIResolver uriResolver = (href, base) -> href.startsWith("memory:") ? new StreamSource(new StringReader(schema), href) : null;
+		
+		for (ResourceCache resourceCache : new ResourceCache[] { null, ResourceCache.builder().build() }) {
+			try (Pooled<Validator> validator = XMLProcessors.builder(catalog).uriResolver(uriResolver).resourceCache(resourceCache).build().validator("urn:schema")) {
+				validator.get().validate(new StreamSource(new StringReader("<a>1</a>")));
+			}
+		}
+	}
+
+	private void test(XMLProcessors processors) throws Exception {
+
+		DocumentBuilder first;
+		try (Pooled<DocumentBuilder> documentBuilder = processors.documentBuilder()) {
+			first = documentBuilder.get();
+			String document = "<!DOCTYPE a PUBLIC '-//TEST//ENTITIES//EN' 'http://example.invalid/entities.dtd'><a>&greeting;</a>";
+			assertEquals("hello", first.parse(new InputSource(new StringReader(document))).getDocumentElement().getTextContent());
+		}
+		try (Pooled<DocumentBuilder> documentBuilder = processors.documentBuilder()) {
+			assertSame(first, documentBuilder.get());
+		}
+
+		assertSame(processors.schema("urn:schema"), processors.schema("urn:schema"));
+		try (Pooled<Validator> validator = processors.validator("urn:schema")) {
+			validator.get().validate(new StreamSource(new StringReader("<a>1</a>")));
+			try {
+				validator.get().validate(new StreamSource(new StringReader("<a>x</a>")));
+				throw new AssertionError("validation should fail");
+			} catch (SAXException expected) {}
+		}
+
+		try (Pooled<Transformer> transformer = processors.transformer("urn:stylesheet")) {
+			StringWriter writer = new StringWriter();
+			transformer.get().transform(new StreamSource(new StringReader("<a>1</a>")), new StreamResult(writer));
+			assertEquals("[1]", writer.toString());
+		}
+	}
+
+	@Test
+	public void failedCompilationTest() throws Exception {
+		
+		XMLProcessors processors = XMLProcessors.builder(catalog).build();
+		write("schema.xsd", "<broken");
+		try {
+			processors.schema("urn:schema");
+			throw new AssertionError("compilation should fail");
+		} catch (XMLException expected) {}
+		
+		write("schema.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'><xs:element name='a' type='xs:int'/></xs:schema>");
+		assertSame(processors.schema("urn:schema"), processors.schema("urn:schema"));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void closedTest() {
+		Pooled<DocumentBuilder> documentBuilder = XMLProcessors.builder(catalog).build().documentBuilder();
+		documentBuilder.close();
+		documentBuilder.get();
+	}
+
+	private void write(String name, String content) throws IOException {
+		Files.write(temporaryFolder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,120 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BoundedCatalogCacheTest {
+	
+	@Test
+	public void lruTest() {
+		
+		BoundedCatalogCache cache = BoundedCatalogCache.builder().maximumSize(2).build();
+		Catalog a = newCatalog(PUBLIC, null).end();
+		Catalog b = newCatalog(PUBLIC, null).end();
+		Catalog c = newCatalog(PUBLIC, null).end();
+		
+		assertSame(a, cache.resolve("a", () -> a));
+		assertSame(b, cache.resolve("b", () -> b));
+		assertSame(a, cache.resolve("a", () -> c));
+		assertSame(c, cache.resolve("c", () -> c));
+		assertSame(a, cache.resolve("a", () -> c));
+		assertSame(c, cache.resolve("b", () -> c));
+		
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.statistics().getHitCount());
+		assertEquals(4, cache.statistics().getMissCount());
+		assertEquals(2, cache.statistics().getEvictionCount());
+	}
+	
+	@Test
+	public void expirationTest() {
+		
+		AtomicLong ticker = new AtomicLong();
+		BoundedCatalogCache cache = BoundedCatalogCache.builder().expireAfterWrite(10, TimeUnit.NANOSECONDS).expireAfterAccess(5, TimeUnit.NANOSECONDS).ticker(ticker::get).build();
+		Catalog a = newCatalog(PUBLIC, null).end();
+		
+		assertSame(a, cache.resolve("a", () -> a));
+		ticker.set(4);
+		assertSame(a, cache.resolve("a", () -> null));
+		ticker.set(8);
+		assertSame(a, cache.resolve("a", () -> null));
+		ticker.set(10);
+		assertNotSame(a, cache.resolve("a", () -> newCatalog(PUBLIC, null).end()));
+		assertEquals(1, cache.statistics().getEvictionCount());
+	}
+	
+	@Test
+	public void singleFlightTest() throws Exception {
+		
+		BoundedCatalogCache cache = BoundedCatalogCache.builder().maximumSize(2).build();
+		Catalog a = newCatalog(PUBLIC, null).end();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<Catalog> first = executor.submit(() -> cache.resolve("a", () -> {
+				loads.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException interruptedException) {
+					throw new IllegalStateException(interruptedException);
+				}
+				return a;
+			}));
+			started.await();
+			Future<Catalog> second = executor.submit(() -> cache.resolve("a", () -> {
+				loads.incrementAndGet();
+				return newCatalog(PUBLIC, null).end();
+			}));
+			release.countDown();
+			assertSame(a, first.get());
+			assertSame(a, second.get());
+		} finally {
+			executor.shutdown();
+		}
+		
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.statistics().getMissCount());
+	}
+	
+	@Test
+	public void invalidationTest() {
+		
+		BoundedCatalogCache cache = BoundedCatalogCache.builder().build();
+		Catalog a = newCatalog(PUBLIC, null).end();
+		Catalog b = newCatalog(PUBLIC, null).end();
+		
+		assertSame(a, cache.resolve("a", () -> {
+			cache.invalidate("a"); // the catalog changes while being loaded
+			return a;
+		}));
+		assertEquals(0, cache.size());
+		assertSame(b, cache.resolve("a", () -> b));
+		assertSame(b, cache.resolve("a", () -> a));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void maximumWeightTest() {
+		BoundedCatalogCache.builder().maximumWeight(0, catalog -> 1);
+	}
+	
+	@Test(expected = NullPointerException.class)
+	public void weigherTest() {
+		BoundedCatalogCache.builder().maximumWeight(1, null);
+	}
+}
@@ -0,0 +1,55 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogParserTest.CLASSPATH_RESOLVER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class CatalogMetricsTest {
+	
+	@Test
+	public void metricsTest() throws Exception {
+		
+		CatalogMetrics metrics = new CatalogMetrics();
+		CatalogParser parser = new CatalogParser(CLASSPATH_RESOLVER, new SimpleCatalogCache(), false, metrics);
+		Catalog catalog = parser.parse("test-catalog.xml");
+		parser.parse("test-catalog.xml");
+		
+		assertEquals("http://example.org/group/group.xsd", catalog.lookupURI("urn:group"));
+		assertNull(catalog.lookupURI("urn:unknown"));
+		
+		assertEquals(2, metrics.getCacheMissCount()); // test-catalog.xml and next-catalog.xml
+		assertEquals(1, metrics.getCacheHitCount());
+		assertEquals(2, metrics.getCatalogLoadTimes().size());
+		assertEquals(Long.valueOf(1), metrics.getEntryMatchCounts().get("URI"));
+		assertEquals(Long.valueOf(2), metrics.getEntryMissCounts().get("URI")); // in both catalogs
+		assertEquals(Long.valueOf(1), metrics.getEntryMissCounts().get("NEXT_CATALOG"));
+		assertEquals(2, metrics.getLookupCount());
+		assertEquals(1, metrics.getLookupMissCount());
+		assertArrayEquals(new String[] { "urn:unknown" }, metrics.getRecentMisses());
+		assertNull(catalog.lookupExternalIdentifier("-//UNKNOWN//EN", "urn:unknown"));
+		assertArrayEquals(new String[] { "urn:unknown", "[-//UNKNOWN//EN, urn:unknown]" }, metrics.getRecentMisses());
+		
+		for (int i = 0; i < 2000; i++) {
+			metrics.catalogLoaded("urn:catalog:" + i, i);
+		}
+		assertEquals(1000, metrics.getCatalogLoadTimes().size());
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.register("test");
+		try {
+			assertEquals(3L, server.getAttribute(name, "LookupCount"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0L, server.getAttribute(name, "LookupCount"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package org.codegeny.xml.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+
+public class CatalogParserTest {
+	
+	static final URIResolver CLASSPATH_RESOLVER = (href, base) -> new StreamSource(base == null ? CatalogParserTest.class.getResource(href).toString() : URI.create(base).resolve(href).toString());
+	
+	@Test
+	public void parseTest() {
+		
+		Catalog catalog = new CatalogParser(CLASSPATH_RESOLVER).parse("test-catalog.xml");
+		
+		assertEquals("http://example.org/root.xsd", catalog.lookupExternalIdentifier(null, "urn:root"));
+		assertEquals("http://example.org/group/group.xsd", catalog.lookupURI("urn:group"));
+		assertEquals("http://example.org/nested/nested.dtd", catalog.lookupExternalIdentifier("-//NESTED//EN", null));
+		assertNull(catalog.lookupExternalIdentifier("-//NESTED//EN", "urn:other"));
+		assertEquals("http://example.org/group/suffix.xsd", catalog.lookupURI("http://example.net/a/suffix.xsd"));
+		assertEquals("http://example.org/rewritten/a.xsd", catalog.lookupURI("http://example.com/a.xsd"));
+		assertEquals(URI.create(CatalogParserTest.class.getResource("next-catalog.xml").toString()).resolve("next.xsd").toString(), catalog.lookupURI("urn:next"));
+	}
+	
+	@Test
+	public void externalEntitiesTest() {
+		
+		String catalog = "<!DOCTYPE catalog PUBLIC '-//OASIS//DTD XML Catalogs V1.1//EN' 'http://example.invalid/catalog.dtd' [<!ENTITY external SYSTEM 'http://example.invalid/entity.xml'>]>"
+			+ "<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog' prefer='public'><uri name='urn:a' uri='http://example.org/a.xsd'/><group>&external;</group></catalog>";
+		
+		// neither the DTD nor the external entity are loaded (they would fail)
+		assertEquals("http://example.org/a.xsd", new CatalogParser((href, base) -> new StreamSource(new StringReader(catalog), "http://example.org/catalog.xml")).parse("catalog.xml").lookupURI("urn:a"));
+	}
+	
+	@Test
+	public void lazyTest() {
+		
+		Catalog catalog = new CatalogParser(CLASSPATH_RESOLVER, CatalogCache.NO_CACHE, true).parse("lazy-catalog.xml");
+		
+		assertEquals("http://example.org/lazy.xsd", catalog.lookupURI("urn:lazy"));
+		try {
+			catalog.lookupURI("urn:other"); // reaches missing-catalog.xml
+			fail();
+		} catch (CatalogException catalogException) {
+			assertEquals("http://example.org/lazy.xsd", catalog.lookupURI("urn:lazy"));
+		}
+	}
+	
+	@Test
+	public void asyncTest() throws Exception {
+		
+		AtomicInteger parsed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Catalog catalog = new CatalogParser(CLASSPATH_RESOLVER, (systemId, supplier) -> {
+				parsed.incrementAndGet();
+				return supplier.get();
+			}).parseAsync("async-a.xml", executor).get(10, TimeUnit.SECONDS);
+			
+			assertEquals(3, parsed.get()); // cyclic and diamond-shaped references are only loaded once
+			assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+			assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:b"));
+			assertEquals("http://example.org/c.xsd", catalog.lookupURI("urn:c"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void asyncFailureTest() throws Exception {
+		
+		CatalogCache cache = new SimpleCatalogCache();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			new CatalogParser(CLASSPATH_RESOLVER, cache).parseAsync("async-broken.xml", executor).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException executionException) {
+			// async-broken.xml is cached even though missing-catalog.xml failed, its lookups must fail as if it was lazily loaded
+			Catalog catalog = new CatalogParser(CLASSPATH_RESOLVER, cache).parse("async-broken.xml");
+			try {
+				catalog.lookupURI("urn:other");
+				fail();
+			} catch (CatalogException catalogException) {
+				assertEquals("http://example.org/broken.xsd", catalog.lookupURI("urn:broken"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -2,7 +2,17 @@ package org.codegeny.xml.catalog;
 
 import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
 import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.codegeny.xml.catalog.Prefer.SYSTEM;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -28,4 +38,321 @@ public class CatalogTest {
 		assertEquals("http://www.oasis-open.org/docbook/xml/4.1.2/docbookx.dtd", catalog.mapExternalIdentifier("-//OASIS//DTD DocBook XML V4.1.2//EN", null).get());
 		assertEquals("http://www.oasis-open.org/docbook/xml/mathml/1.0/dbmathml.dtd", catalog.mapExternalIdentifier("-//OASIS//DTD DocBook MathML Module V1.0//EN", null).get());
 	}
+	
+	@Test
+	public void groupPreferTest() {
+		
+		Catalog catalog = newCatalog(PUBLIC, "http://example.org/")
+			.addGroup(SYSTEM, null)
+				.addPublic("-//SYSTEM//EN", "system.dtd", null)
+			.end()
+			.addGroup(null, null)
+				.addPublic("-//INHERITED//EN", "inherited.dtd", null)
+			.end()
+			.end();
+		
+		assertNull(catalog.lookupExternalIdentifier("-//SYSTEM//EN", "urn:a")); // the group prefers system identifiers
+		assertEquals("http://example.org/system.dtd", catalog.lookupExternalIdentifier("-//SYSTEM//EN", null));
+		assertEquals("http://example.org/inherited.dtd", catalog.lookupExternalIdentifier("-//INHERITED//EN", "urn:a"));
+	}
+	
+	@Test
+	public void exactMatchTest() {
+		
+		Catalog catalog = newCatalog(SYSTEM, "http://example.org/")
+			.addSystem("urn:a", "first.xsd", null)
+			.addSystem("urn:a", "second.xsd", null)
+			.addURI("urn:a", "uri.xsd", null)
+			.addPublic("-//A//EN", "public.dtd", null)
+			.end();
+		
+		assertEquals("http://example.org/first.xsd", catalog.mapExternalIdentifier(null, "urn:a").get());
+		assertEquals("http://example.org/uri.xsd", catalog.mapURI("urn:a").get());
+		assertEquals("http://example.org/public.dtd", catalog.mapExternalIdentifier("-//A//EN", null).get());
+		assertFalse(catalog.mapExternalIdentifier("-//A//EN", "urn:b").isPresent());
+		assertFalse(catalog.mapExternalIdentifier(null, "urn:b").isPresent());
+		assertFalse(catalog.mapURI("urn:b").isPresent());
+		assertEquals("http://example.org/uri.xsd", catalog.lookupURI("urn:a"));
+		assertNull(catalog.lookupURI("urn:b"));
+	}
+	
+	@Test
+	public void prefixMatchTest() {
+		
+		Catalog delegate = newCatalog(PUBLIC, "http://example.org/")
+			.addSystem("http://d/b/x.xsd", "x.xsd", null)
+			.addURI("http://a/b/c.xsd", "c.xsd", null)
+			.end();
+		
+		Catalog catalog = newCatalog(PUBLIC, null)
+			.addRewriteSystem("http://a/", "file:/a/")
+			.addRewriteSystem("http://a/b/", "file:/b/")
+			.addRewriteURI("urn:x:", "urn:y:")
+			.addDelegateSystem("http://d/", newCatalog(PUBLIC, null).end())
+			.addDelegateSystem("http://d/b/", newCatalog(PUBLIC, null).end())
+			.addDelegateSystem("http://", delegate)
+			.addDelegateURI("http://", delegate)
+			.end();
+		
+		assertEquals("file:/b/c.xsd", catalog.mapExternalIdentifier(null, "http://a/b/c.xsd").get());
+		assertEquals("file:/a/c.xsd", catalog.mapExternalIdentifier(null, "http://a/c.xsd").get());
+		assertEquals("urn:y:urn:x:", catalog.mapURI("urn:x:urn:x:").get());
+		assertEquals("http://example.org/x.xsd", catalog.mapExternalIdentifier(null, "http://d/b/x.xsd").get());
+		assertFalse(catalog.mapExternalIdentifier(null, "http://d/b/c.xsd").isPresent());
+		assertEquals("http://example.org/c.xsd", catalog.mapURI("http://a/b/c.xsd").get());
+		assertFalse(catalog.mapURI("http://b/").isPresent());
+	}
+	
+	@Test
+	public void suffixMatchTest() {
+		
+		Catalog catalog = newCatalog(PUBLIC, "http://example.org/")
+			.addURISuffix("b.xsd", "short.xsd", null)
+			.addURISuffix("/a/b.xsd", "long.xsd", null)
+			.addURISuffix("/a/b.xsd", "duplicate.xsd", null)
+			.addSystemSuffix(".dtd", "any.dtd", null)
+			.end();
+		
+		assertEquals("http://example.org/long.xsd", catalog.mapURI("http://x/a/b.xsd").get());
+		assertEquals("http://example.org/short.xsd", catalog.mapURI("http://x/b/b.xsd").get());
+		assertEquals("http://example.org/any.dtd", catalog.mapExternalIdentifier(null, "x.dtd").get());
+		assertFalse(catalog.mapURI("b.xs").isPresent());
+		assertFalse(catalog.mapExternalIdentifier(null, null).isPresent());
+	}
+	
+	@Test
+	public void optionalMapperTest() {
+
+		// mappers implemented through the Optional returning methods (as before the lookup methods existed)
+		URIMapper uriMapper = uri -> "urn:a".equals(uri) ? Optional.of("http://example.org/a.xsd") : Optional.empty();
+		ExternalIdentifierMapper externalIdentifierMapper = (publicId, systemId) -> Optional.ofNullable(systemId).map(s -> s.concat(".dtd"));
+
+		assertEquals("http://example.org/a.xsd", uriMapper.lookupURI("urn:a"));
+		assertNull(uriMapper.lookupURI("urn:b"));
+		assertEquals(Arrays.asList("http://example.org/a.xsd", null), Arrays.asList(uriMapper.lookupURIs(new String[] { "urn:a", "urn:b" })));
+		assertEquals("x.dtd", externalIdentifierMapper.lookupExternalIdentifier(null, "x"));
+		assertNull(externalIdentifierMapper.lookupExternalIdentifier("-//A//EN", null));
+	}
+
+	@Test
+	public void memoizingTest() {
+		
+		AtomicInteger lookups = new AtomicInteger();
+		Catalog catalog = newCatalog(PUBLIC, "http://example.org/").addURI("urn:a", "a.xsd", null).end();
+		MemoizingCatalog memoizing = new MemoizingCatalog(new CompositeCatalog(Arrays.asList(newCatalog(PUBLIC, null).addNextCatalog(new Catalog() {
+			
+			public String lookupExternalIdentifier(String publicId, String systemId) {
+				lookups.incrementAndGet();
+				return catalog.lookupExternalIdentifier(publicId, systemId);
+			}
+			
+			public String lookupURI(String uri) {
+				lookups.incrementAndGet();
+				return catalog.lookupURI(uri);
+			}
+		}).end())), 2);
+		
+		for (int i = 0; i < 3; i++) {
+			assertEquals("http://example.org/a.xsd", memoizing.lookupURI("urn:a"));
+			assertNull(memoizing.lookupURI("urn:b"));
+			assertNull(memoizing.lookupExternalIdentifier(null, "urn:a"));
+		}
+		assertEquals(3, lookups.get());
+		assertEquals(6, memoizing.statistics().getHitCount());
+		assertEquals(3, memoizing.statistics().getMissCount());
+		
+		assertNull(memoizing.lookupURI("urn:c")); // evicts one URI
+		memoizing.invalidateAll();
+		assertEquals("http://example.org/a.xsd", memoizing.lookupURI("urn:a"));
+		assertEquals(5, lookups.get());
+		assertEquals(1, memoizing.statistics().getEvictionCount());
+	}
+	
+	@Test
+	public void memoizingInvalidationTest() {
+		
+		AtomicInteger lookups = new AtomicInteger();
+		AtomicReference<MemoizingCatalog> memoizing = new AtomicReference<>();
+		memoizing.set(new MemoizingCatalog(new Catalog() {
+			
+			public String lookupExternalIdentifier(String publicId, String systemId) {
+				return null;
+			}
+			
+			public String lookupURI(String uri) {
+				if (lookups.incrementAndGet() == 1) {
+					memoizing.get().invalidateAll(); // the catalog changes while being looked up
+				}
+				return "http://example.org/" + lookups.get();
+			}
+		}, 10));
+		
+		assertEquals("http://example.org/1", memoizing.get().lookupURI("urn:a"));
+		assertEquals("http://example.org/2", memoizing.get().lookupURI("urn:a"));
+		assertEquals("http://example.org/2", memoizing.get().lookupURI("urn:a"));
+		assertEquals(2, lookups.get());
+	}
+	
+	@Test
+	public void memoizingNestedTest() {
+		
+		MemoizingCatalog memoizing = new MemoizingCatalog(newCatalog(PUBLIC, "http://example.org/").addURI("urn:a", "a.xsd", null).end(), 10);
+		Catalog catalog = newCatalog(PUBLIC, null).addNextCatalog(memoizing).end();
+		
+		assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+		assertEquals(0, memoizing.statistics().getMissCount()); // looked up on behalf of the enclosing catalog
+		assertEquals("http://example.org/a.xsd", memoizing.lookupURI("urn:a"));
+		assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+		assertEquals(1, memoizing.statistics().getMissCount());
+		assertEquals(0, memoizing.statistics().getHitCount());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void memoizingMaximumSizeTest() {
+		new MemoizingCatalog(newCatalog(PUBLIC, null).end(), 0);
+	}
+	
+	@Test
+	public void batchTest() {
+		
+		Catalog delegate = newCatalog(PUBLIC, "http://example.org/")
+			.addURISuffix(".xsd", "suffix.xsd", null)
+			.addSystem("http://d/x.dtd", "x.dtd", null)
+			.end();
+		
+		Catalog catalog = new CompositeCatalog(Arrays.asList(newCatalog(SYSTEM, "http://example.org/")
+			.addURI("urn:a", "a.xsd", null)
+			.addRewriteURI("http://a/", "file:/a/")
+			.addRewriteURI("http://a/b/", "file:/b/")
+			.addDelegateURI("http://d/", delegate)
+			.addPublic("-//A//EN", "a.dtd", null)
+			.addRewriteSystem("http://a/", "file:/a/")
+			.addNextCatalog(delegate)
+			.end(), delegate));
+		
+		String[] uris = new String[1000];
+		ExternalIdentifier[] externalIdentifiers = new ExternalIdentifier[uris.length];
+		String[] prefixes = { "urn:", "http://a/", "http://a/b/", "http://ab/", "http://d/", null };
+		for (int i = 0; i < uris.length; i++) {
+			String prefix = prefixes[i % prefixes.length];
+			uris[i] = prefix == null ? null : prefix + (i % 7 == 0 ? "a" : i % 3 + ".xsd");
+			externalIdentifiers[i] = new ExternalIdentifier(i % 2 == 0 ? "-//A//EN" : null, i % 5 == 0 ? "http://d/x.dtd" : uris[i]);
+		}
+		
+		for (boolean parallel : new boolean[] { false, true }) {
+			String[] results = catalog.lookupURIs(uris, parallel);
+			for (int i = 0; i < uris.length; i++) {
+				assertEquals(uris[i], catalog.lookupURI(uris[i]), results[i]);
+			}
+			results = catalog.lookupExternalIdentifiers(externalIdentifiers, parallel);
+			for (int i = 0; i < uris.length; i++) {
+				assertEquals(externalIdentifiers[i].toString(), catalog.lookupExternalIdentifier(externalIdentifiers[i].getPublicId(), externalIdentifiers[i].getSystemId()), results[i]);
+			}
+		}
+		assertEquals(Arrays.asList(Optional.of("http://example.org/a.xsd"), Optional.empty()), catalog.mapURIs(Arrays.asList("urn:a", "urn:b")));
+	}
+	
+	@Test
+	public void flattenTest() {
+		
+		Catalog next = newCatalog(PUBLIC, "http://example.org/next/")
+			.addSystem("urn:a", "a.xsd", null)
+			.addSystem("urn:b", "b.xsd", null)
+			.addPublic("-//B//EN", "b.dtd", null)
+			.addURI("urn:b", "b.xsd", null)
+			.addRewriteURI("urn:", "urn:next:")
+			.end();
+		
+		Catalog dynamic = new MemoizingCatalog(newCatalog(PUBLIC, "http://example.org/dynamic/")
+			.addSystem("urn:c", "c.xsd", null)
+			.addURI("urn:a", "a.xsd", null)
+			.end(), 10);
+		
+		Catalog first = newCatalog(SYSTEM, "http://example.org/first/")
+			.addPublic("-//A//EN", "a.dtd", null)
+			.addRewriteSystem("urn:b", "urn:rewritten:")
+			.addURISuffix(":c", "c.xsd", null)
+			.addNextCatalog(next)
+			.end();
+		
+		CompositeCatalog catalog = new CompositeCatalog(Arrays.asList(first, new CompositeCatalog(Arrays.asList(dynamic, next)), newCatalog(PUBLIC, "http://example.org/last/")
+			.addPublic("-//A//EN", "a.dtd", null)
+			.addSystem("urn:d", "d.xsd", null)
+			.addDelegateSystem("urn:", next)
+			.end()));
+		Catalog flattened = catalog.flatten();
+		
+		for (String systemId : Arrays.asList("urn:a", "urn:b", "urn:bb", "urn:c", "urn:d", "urn:e", null)) {
+			for (String publicId : Arrays.asList("-//A//EN", "-//B//EN", null)) {
+				assertEquals(catalog.lookupExternalIdentifier(publicId, systemId), flattened.lookupExternalIdentifier(publicId, systemId));
+			}
+			assertEquals(catalog.lookupURI(systemId), flattened.lookupURI(systemId));
+		}
+		assertEquals("http://example.org/last/a.dtd", flattened.lookupExternalIdentifier("-//A//EN", "urn:x"));
+		assertEquals("urn:rewritten:b", flattened.lookupExternalIdentifier(null, "urn:bb"));
+		assertEquals("urn:next:a", flattened.lookupURI("urn:a")); // nextCatalog of the first child comes before the dynamic one
+	}
+	
+	@Test
+	public void rebaseTest() {
+		
+		Catalog catalog = newCatalog(PUBLIC, "http://example.org/a/")
+			.addURI("urn:a", "../b/a.xsd", null)
+			.addURI("urn:b", "a.xsd", "http://example.org/c/")
+			.end();
+		
+		assertEquals("http://example.org/b/a.xsd", catalog.lookupURI("urn:a"));
+		assertSame(catalog.lookupURI("urn:a"), catalog.lookupURI("urn:a")); // precomputed
+		assertEquals("http://example.org/c/a.xsd", catalog.lookupURI("urn:b"));
+		try {
+			newCatalog(PUBLIC, null).addURI("urn:a", "a.xsd", null);
+			fail();
+		} catch (CatalogException catalogException) {
+			// relative URIs are resolved at build time
+		}
+	}
+
+	@Test
+	public void traversalTest() {
+
+		AtomicInteger evaluations = new AtomicInteger();
+		CatalogListener listener = new CatalogListener() {
+
+			@Override
+			public void entryMissed(EntryType type) {
+				evaluations.incrementAndGet();
+			}
+		};
+		Catalog base = newCatalog(PUBLIC, "http://example.org/", listener).addURI("urn:base", "base.xsd", null).end();
+		Catalog[] vendors = new Catalog[3];
+		for (int i = 0; i < vendors.length; i++) {
+			vendors[i] = newCatalog(PUBLIC, null).addNextCatalog(base).end();
+		}
+		Catalog diamond = new CompositeCatalog(Arrays.asList(vendors));
+
+		assertNull(diamond.lookupURI("urn:unknown"));
+		assertEquals(1, evaluations.getAndSet(0)); // shared base is only evaluated once
+		assertEquals("http://example.org/base.xsd", diamond.lookupURI("urn:base"));
+
+		Catalog delegates = newCatalog(PUBLIC, null).addDelegateURI("http://a/", base).addDelegateURI("http://a/b/", base).addNextCatalog(base).end();
+		assertNull(delegates.lookupURI("http://a/b/c.xsd"));
+		assertEquals(1, evaluations.getAndSet(0)); // delegated to for both prefixes but only consulted once
+
+		Catalog[] cycle = new Catalog[1];
+		Catalog a = newCatalog(PUBLIC, "http://example.org/").addURI("urn:a", "a.xsd", null).addNextCatalog(new LazyCatalog(() -> cycle[0])).end();
+		cycle[0] = newCatalog(PUBLIC, "http://example.org/").addSystem("urn:b", "b.xsd", null).addNextCatalog(a).addNextCatalog(base).end();
+
+		assertEquals("http://example.org/b.xsd", a.lookupExternalIdentifier(null, "urn:b"));
+		assertNull(a.lookupExternalIdentifier(null, "urn:unknown"));
+		assertEquals("http://example.org/a.xsd", cycle[0].lookupURI("urn:a"));
+		assertEquals(Arrays.asList("http://example.org/a.xsd", "http://example.org/base.xsd", null), Arrays.asList(cycle[0].lookupURIs(new String[] { "urn:a", "urn:base", "urn:unknown" })));
+		evaluations.set(0);
+		assertNull(a.lookupURI("urn:unknown"));
+		assertEquals(1, evaluations.get());
+
+		Catalog compiled = new CompiledCatalog(CatalogCompiler.compile(a));
+		assertEquals("http://example.org/b.xsd", compiled.lookupExternalIdentifier(null, "urn:b"));
+		assertNull(compiled.lookupURI("urn:unknown"));
+		assertEquals("http://example.org/base.xsd", new CompositeCatalog(Arrays.asList(a, cycle[0])).flatten().lookupURI("urn:base"));
+	}
 }
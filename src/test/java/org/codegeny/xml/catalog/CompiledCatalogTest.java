@@ -0,0 +1,117 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.CatalogParserTest.CLASSPATH_RESOLVER;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.codegeny.xml.catalog.Prefer.SYSTEM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompiledCatalogTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void compileTest() throws IOException {
+
+		Path path = temporaryFolder.newFile().toPath();
+		CatalogCompiler.compile(new CatalogParser(CLASSPATH_RESOLVER, CatalogCache.NO_CACHE, true).parse("test-catalog.xml"), path);
+		Catalog catalog = CompiledCatalog.open(path);
+
+		assertEquals("http://example.org/root.xsd", catalog.lookupExternalIdentifier(null, "urn:root"));
+		assertEquals("http://example.org/group/group.xsd", catalog.lookupURI("urn:group"));
+		assertEquals("http://example.org/nested/nested.dtd", catalog.lookupExternalIdentifier("-//NESTED//EN", null));
+		assertNull(catalog.lookupExternalIdentifier("-//NESTED//EN", "urn:other"));
+		assertEquals("http://example.org/group/suffix.xsd", catalog.lookupURI("http://example.net/a/suffix.xsd"));
+		assertEquals("http://example.org/rewritten/a.xsd", catalog.lookupURI("http://example.com/a.xsd"));
+		assertEquals(URI.create(CatalogParserTest.class.getResource("next-catalog.xml").toString()).resolve("next.xsd").toString(), catalog.lookupURI("urn:next"));
+		assertNull(catalog.lookupURI("urn:unknown"));
+	}
+
+	@Test
+	public void compactTest() {
+
+		CatalogBuilder<Catalog> builder = newCatalog(PUBLIC, "http://example.org/");
+		for (int i = 0; i < 10000; i++) {
+			builder.addPublic("-//P" + i + "//EN", "p" + i + ".dtd", null).addSystem("urn:s:" + i, "s\u00e9" + i + ".dtd", null).addURI("urn:\u2603:" + i, "u" + i + ".xsd", null);
+		}
+		Catalog catalog = builder.addRewriteURI("urn:\u2603:", "http://example.org/snow/").addURISuffix("\u00e9.xsd", "suffix.xsd", null).end();
+
+		for (boolean offHeap : new boolean[] { false, true }) {
+			Catalog compact = CompiledCatalog.compact(catalog, offHeap);
+			for (int i = 0; i < 10000; i += 99) {
+				assertEquals(catalog.lookupExternalIdentifier("-//P" + i + "//EN", null), compact.lookupExternalIdentifier("-//P" + i + "//EN", null));
+				assertEquals(catalog.lookupExternalIdentifier(null, "urn:s:" + i), compact.lookupExternalIdentifier(null, "urn:s:" + i));
+				assertEquals(catalog.lookupURI("urn:\u2603:" + i), compact.lookupURI("urn:\u2603:" + i));
+			}
+			assertEquals("http://example.org/snow/x", compact.lookupURI("urn:\u2603:x"));
+			assertEquals("http://example.org/suffix.xsd", compact.lookupURI("http://example.com/caf\u00e9.xsd"));
+			assertNull(compact.lookupURI("urn:unknown"));
+		}
+	}
+
+	@Test
+	public void delegateTest() {
+
+		Catalog delegate = newCatalog(PUBLIC, "http://example.org/")
+			.addSystem("http://d/b/x.xsd", "x.xsd", null)
+			.addPublic("-//D//EN", "d.dtd", null)
+			.addURISuffix(".xsd", "suffix.xsd", null)
+			.end();
+
+		Catalog catalog = new CompositeCatalog(Arrays.asList(newCatalog(SYSTEM, null)
+			.addRewriteSystem("http://a/", "file:/a/")
+			.addRewriteSystem("http://a/b/", "file:/b/")
+			.addDelegateSystem("http://d/", newCatalog(PUBLIC, null).end())
+			.addDelegateSystem("http://", delegate)
+			.addDelegatePublic("-//D", delegate)
+			.end(), new MemoizingCatalog(delegate, 10)));
+
+		Catalog compiled = new CompiledCatalog(CatalogCompiler.compile(catalog));
+
+		for (String systemId : Arrays.asList("http://a/b/c.xsd", "http://a/c.xsd", "http://d/b/x.xsd", "http://d/b/c.xsd", "http://b/", null)) {
+			for (String publicId : Arrays.asList("-//D//EN", "-//E//EN", null)) {
+				assertEquals(catalog.lookupExternalIdentifier(publicId, systemId), compiled.lookupExternalIdentifier(publicId, systemId));
+			}
+			assertEquals(catalog.lookupURI(systemId), compiled.lookupURI(systemId));
+		}
+	}
+
+	@Test
+	public void cycleTest() {
+
+		MutableCatalog a = new MutableCatalog(PUBLIC, "http://example.org/");
+		MutableCatalog b = new MutableCatalog(PUBLIC, "http://example.org/");
+		a.update(batch -> batch.addURI("urn:a", "a.xsd", null).addNextCatalog(b));
+		b.update(batch -> batch.addURI("urn:b", "b.xsd", null).addDelegateURI("urn:", a));
+
+		Catalog compiled = new CompiledCatalog(CatalogCompiler.compile(a));
+
+		assertEquals("http://example.org/a.xsd", compiled.lookupURI("urn:a"));
+		assertEquals("http://example.org/b.xsd", compiled.lookupURI("urn:b"));
+		assertNull(compiled.lookupURI("urn:c"));
+	}
+
+	@Test
+	public void invalidTest() {
+
+		try {
+			new CompiledCatalog(ByteBuffer.wrap(new byte[16]));
+			fail();
+		} catch (CatalogException catalogException) {
+			assertEquals("Not a compiled catalog", catalogException.getMessage());
+		}
+	}
+}
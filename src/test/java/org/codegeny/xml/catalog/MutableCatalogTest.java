@@ -0,0 +1,107 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MutableCatalogTest {
+	
+	@Test
+	public void updateTest() {
+		
+		Catalog next = newCatalog(PUBLIC, "http://example.org/next/").addURI("urn:next", "next.xsd", null).end();
+		MutableCatalog catalog = new MutableCatalog(PUBLIC, "http://example.org/");
+		assertNull(catalog.lookupURI("urn:a"));
+		
+		catalog.update(batch -> batch
+			.addURI("urn:a", "a.xsd", null)
+			.addRewriteURI("urn:", "urn:rewritten:")
+			.addSystem("urn:a", "a.dtd", null)
+			.addPublic("-//A//EN", "a.dtd", null)
+			.addNextCatalog(next));
+		
+		assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+		assertEquals("urn:rewritten:b", catalog.lookupURI("urn:b"));
+		assertEquals("http://example.org/a.dtd", catalog.lookupExternalIdentifier("-//A//EN", null));
+		
+		catalog.update(batch -> batch.remove(EntryType.REWRITE_URI, "urn:").remove(EntryType.URI, "urn:a"));
+		
+		assertEquals("http://example.org/a.dtd", catalog.lookupExternalIdentifier(null, "urn:a"));
+		assertNull(catalog.lookupURI("urn:a"));
+		assertEquals("http://example.org/next/next.xsd", catalog.lookupURI("urn:next"));
+		
+		catalog.update(batch -> batch.removeNextCatalog(next));
+		
+		assertNull(catalog.lookupURI("urn:next"));
+	}
+	
+	@Test
+	public void atomicTest() {
+		
+		MutableCatalog catalog = new MutableCatalog(PUBLIC, null);
+		catalog.update(batch -> batch.addURI("urn:a", "http://example.org/a.xsd", null));
+		try {
+			catalog.update(batch -> batch.remove(EntryType.URI, "urn:a").addURI("urn:b", "b.xsd", null)); // no base
+			fail();
+		} catch (CatalogException catalogException) {
+			// nothing applied
+		}
+		assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+	}
+	
+	@Test
+	public void snapshotTest() {
+		
+		MutableCatalog catalog = new MutableCatalog(PUBLIC, "http://example.org/");
+		catalog.update(batch -> batch
+			.addDelegatePublic("-//A", newCatalog(PUBLIC, "http://example.org/delegate/").addPublic("-//A//EN", "a.dtd", null).end())
+			.addPublic("-//A//EN", "a.dtd", null)
+			.addSystemSuffix(".dtd", "suffix.dtd", null)
+			.addURISuffix(".xsd", "suffix.xsd", null));
+		Catalog snapshot = catalog.snapshot();
+		catalog.update(batch -> batch.remove(EntryType.URI_SUFFIX, ".xsd"));
+		
+		for (String systemId : Arrays.asList("a.dtd", "a.xsd", null)) {
+			assertEquals(catalog.lookupExternalIdentifier("-//A//EN", systemId), snapshot.lookupExternalIdentifier("-//A//EN", systemId));
+		}
+		assertEquals("http://example.org/suffix.xsd", snapshot.lookupURI("a.xsd"));
+		assertNull(catalog.lookupURI("a.xsd"));
+	}
+	
+	@Test
+	public void manyEntriesTest() {
+		
+		MutableCatalog catalog = new MutableCatalog(PUBLIC, "http://example.org/");
+		for (int i = 0; i < 100; i++) {
+			int batch = i;
+			catalog.update(b -> {
+				for (int j = 0; j < 100; j++) {
+					b.addURI("urn:" + (batch * 100 + j), (batch * 100 + j) + ".xsd", null).addSystem("urn:" + (batch * 100 + j), (batch * 100 + j) + ".dtd", null);
+				}
+			});
+		}
+		catalog.update(batch -> batch.addURI("urn:0", "duplicate.xsd", null).addPublic("-//A//EN", "a.dtd", null).remove(EntryType.SYSTEM, "urn:1"));
+		
+		assertEquals("http://example.org/0.xsd", catalog.lookupURI("urn:0"));
+		assertEquals("http://example.org/9999.xsd", catalog.lookupURI("urn:9999"));
+		assertEquals("http://example.org/5000.dtd", catalog.lookupExternalIdentifier(null, "urn:5000"));
+		assertEquals("http://example.org/a.dtd", catalog.lookupExternalIdentifier("-//A//EN", "urn:1"));
+		assertNull(catalog.lookupExternalIdentifier(null, "urn:1"));
+		assertNull(catalog.lookupURI("urn:10000"));
+		
+		catalog.update(batch -> batch.remove(EntryType.URI, "urn:0"));
+		assertNull(catalog.lookupURI("urn:0"));
+		
+		Catalog snapshot = catalog.snapshot();
+		for (String key : Arrays.asList("urn:0", "urn:1", "urn:42", "urn:9999")) {
+			assertEquals(catalog.lookupURI(key), snapshot.lookupURI(key));
+			assertEquals(catalog.lookupExternalIdentifier("-//A//EN", key), snapshot.lookupExternalIdentifier("-//A//EN", key));
+		}
+	}
+}
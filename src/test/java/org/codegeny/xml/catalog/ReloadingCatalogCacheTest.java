@@ -0,0 +1,70 @@
+package org.codegeny.xml.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReloadingCatalogCacheTest {
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private void write(Path path, String uri, long lastModifiedTime) throws IOException {
+		Files.write(path, String.format("<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog' prefer='public'><uri name='urn:a' uri='%s'/></catalog>", uri).getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(path, FileTime.fromMillis(lastModifiedTime));
+	}
+	
+	@Test
+	public void reloadTest() throws IOException {
+		
+		Path path = temporaryFolder.newFile("catalog.xml").toPath();
+		write(path, "http://example.org/a.xsd", 1000);
+		
+		List<Exception> failures = new ArrayList<>();
+		CatalogListener listener = new CatalogListener() {
+			
+			@Override
+			public void catalogReloadFailed(String systemId, Exception exception) {
+				assertEquals(path.toUri().toString(), systemId);
+				failures.add(exception);
+			}
+		};
+		
+		try (ReloadingCatalogCache cache = new ReloadingCatalogCache(1, TimeUnit.DAYS, listener)) {
+			
+			Catalog catalog = new CatalogParser((href, base) -> new StreamSource(URI.create(href).toString()), cache).parse(path.toUri().toString());
+			assertEquals("http://example.org/a.xsd", catalog.lookupURI("urn:a"));
+			
+			write(path, "http://example.org/b.xsd", 2000);
+			cache.reload();
+			assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:a"));
+			
+			Files.write(path, "<broken".getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(path, FileTime.fromMillis(3000));
+			cache.reload();
+			assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:a"));
+			assertEquals(1, failures.size());
+			
+			Files.delete(path);
+			cache.reload();
+			assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:a"));
+			assertEquals(2, failures.size());
+			assertTrue(failures.get(1) instanceof IOException);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+public class ResourceCacheTest {
+	
+	private static final URIResolver URI_RESOLVER = (href, base) -> new StreamSource(base == null ? href : URI.create(base).resolve(href).toString());
+	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private static String read(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (int b; (b = input.read()) >= 0;) {
+			output.write(b);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	private Path write(String name, String content) throws IOException {
+		return Files.write(temporaryFolder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void heapTest() throws Exception {
+		
+		test(ResourceCache.builder().maximumSize(10).build());
+	}
+	
+	@Test
+	public void offHeapTest() throws Exception {
+		
+		test(ResourceCache.builder().maximumSize(10).offHeap().build());
+	}
+	
+	@Test
+	public void memoryMappedTest() throws Exception {
+		
+		ResourceCache cache = ResourceCache.builder().memoryMapped().build();
+		Path a = write("a.xsd", "aaaaa");
+		URIResolver uriResolver = cache.uriResolver(newCatalog(PUBLIC, null).addURI("urn:a", a.toUri().toString(), null).end(), URI_RESOLVER);
+		
+		assertEquals("aaaaa", read(((StreamSource) uriResolver.resolve("urn:a", null)).getInputStream()));
+		assertEquals("aaaaa", read(((StreamSource) uriResolver.resolve("urn:a", null)).getInputStream()));
+		assertEquals(1, cache.statistics().getHitCount());
+		assertEquals(5, cache.size());
+	}
+	
+	@Test
+	public void customSchemeTest() throws Exception {
+		
+		ResourceCache cache = ResourceCache.builder().build();
+		Catalog catalog = newCatalog(PUBLIC, null).addURI("urn:catalog", "classpath:test-catalog.xml", null).end();
+		URIResolver uriResolver = cache.uriResolver(catalog, (href, base) -> href.startsWith("classpath:")
+			? new StreamSource(ResourceCacheTest.class.getResourceAsStream(href.substring("classpath:".length())), ResourceCacheTest.class.getResource(href.substring("classpath:".length())).toString())
+			: null);
+		
+		StreamSource source = (StreamSource) uriResolver.resolve("urn:catalog", null);
+		assertEquals(ResourceCacheTest.class.getResource("test-catalog.xml").toString(), source.getSystemId());
+		assertTrue(read(source.getInputStream()).contains("urn:root"));
+		assertTrue(read(((StreamSource) uriResolver.resolve("urn:catalog", null)).getInputStream()).contains("urn:root"));
+		assertEquals(1, cache.statistics().getMissCount());
+		assertNull(uriResolver.resolve("urn:other", null));
+	}
+	
+	@Test
+	public void singleFlightTest() throws Exception {
+		
+		ResourceCache cache = ResourceCache.builder().build();
+		AtomicInteger resolved = new AtomicInteger();
+		URIResolver uriResolver = cache.uriResolver(newCatalog(PUBLIC, null).addURI("urn:a", "http://example.org/a.xsd", null).end(), (href, base) -> {
+			resolved.incrementAndGet();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			return new StreamSource(new ByteArrayInputStream("aaaaa".getBytes(StandardCharsets.UTF_8)), href);
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Source>> sources = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				sources.add(executor.submit(() -> uriResolver.resolve("urn:a", null)));
+			}
+			for (Future<Source> source : sources) {
+				assertEquals("aaaaa", read(((StreamSource) source.get(10, TimeUnit.SECONDS)).getInputStream()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, resolved.get());
+		assertEquals(1, cache.statistics().getMissCount());
+	}
+	
+	private void test(ResourceCache cache) throws Exception {
+		
+		Path a = write("a.xsd", "aaaaa");
+		Path b = write("b.dtd", "bbbbbb");
+		Catalog catalog = newCatalog(PUBLIC, a.getParent().toUri().toString())
+			.addURI("urn:a", "a.xsd", null)
+			.addPublic("-//B//EN", "b.dtd", null)
+			.end();
+		LSInput defaultInput = ((DOMImplementationLS) DocumentBuilderFactory.newInstance().newDocumentBuilder().getDOMImplementation()).createLSInput();
+		URIResolver uriResolver = cache.uriResolver(catalog, (href, base) -> href.startsWith("file:") ? URI_RESOLVER.resolve(href, base) : null);
+		LSResourceResolver resourceResolver = cache.resourceResolver(catalog, (type, namespaceURI, publicId, systemId, baseURI) -> {
+			defaultInput.setSystemId(systemId);
+			return defaultInput;
+		});
+		
+		assertEquals("aaaaa", read(((StreamSource) uriResolver.resolve("urn:a", null)).getInputStream()));
+		write("a.xsd", "changed");
+		StreamSource source = (StreamSource) uriResolver.resolve("urn:a", null);
+		assertEquals(catalog.lookupURI("urn:a"), source.getSystemId());
+		assertEquals("aaaaa", read(source.getInputStream()));
+		assertNull(uriResolver.resolve("urn:b", null));
+		
+		LSInput input = resourceResolver.resolveResource(null, null, "-//B//EN", null, null);
+		assertEquals("bbbbbb", read(input.getByteStream()));
+		assertEquals(catalog.lookupExternalIdentifier("-//B//EN", null), input.getSystemId());
+		
+		assertEquals(1, cache.statistics().getHitCount());
+		assertEquals(2, cache.statistics().getMissCount());
+		assertEquals(1, cache.statistics().getEvictionCount()); // a.xsd evicted to make room for b.dtd
+		assertEquals(6, cache.size());
+	}
+}
@@ -0,0 +1,95 @@
+package org.codegeny.xml.catalog;
+
+import static org.codegeny.xml.catalog.CatalogBuilder.newCatalog;
+import static org.codegeny.xml.catalog.CatalogParserTest.CLASSPATH_RESOLVER;
+import static org.codegeny.xml.catalog.Prefer.PUBLIC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SimpleCatalogCacheTest {
+	
+	@Test
+	public void singleFlightTest() throws Exception {
+		
+		SimpleCatalogCache cache = new SimpleCatalogCache();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Catalog>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> cache.resolve("a", () -> {
+					loads.incrementAndGet();
+					try {
+						latch.await();
+					} catch (InterruptedException interruptedException) {
+						Thread.currentThread().interrupt();
+					}
+					return newCatalog(PUBLIC, null).end();
+				})));
+			}
+			latch.countDown();
+			Catalog catalog = futures.get(0).get(10, TimeUnit.SECONDS);
+			for (Future<Catalog> future : futures) {
+				assertSame(catalog, future.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void recursiveTest() {
+		
+		SimpleCatalogCache cache = new SimpleCatalogCache();
+		Catalog catalog = cache.resolve("a", () -> newCatalog(PUBLIC, "http://example.org/")
+			.addURI("urn:a", "a.xsd", null)
+			.addNextCatalog(cache.resolve("b", () -> newCatalog(PUBLIC, "http://example.org/")
+				.addURI("urn:b", "b.xsd", null)
+				.addNextCatalog(cache.resolve("a", () -> {
+					throw new AssertionError("a is already being loaded");
+				}))
+				.end()))
+			.end());
+		
+		assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:b"));
+		assertEquals("http://example.org/a.xsd", cache.resolve("b", () -> null).lookupURI("urn:a"));
+	}
+	
+	@Test
+	public void failureTest() {
+		
+		SimpleCatalogCache cache = new SimpleCatalogCache();
+		try {
+			cache.resolve("a", () -> {
+				throw new CatalogException("failure");
+			});
+			fail();
+		} catch (CatalogException catalogException) {
+			Catalog catalog = newCatalog(PUBLIC, null).end();
+			assertSame(catalog, cache.resolve("a", () -> catalog));
+		}
+	}
+	
+	@Test
+	public void cyclicParseTest() {
+		
+		Catalog catalog = new CatalogParser(CLASSPATH_RESOLVER, new SimpleCatalogCache()).parse("async-a.xml");
+		
+		assertEquals("http://example.org/b.xsd", catalog.lookupURI("urn:b"));
+		assertEquals("http://example.org/c.xsd", catalog.lookupURI("urn:c"));
+	}
+}